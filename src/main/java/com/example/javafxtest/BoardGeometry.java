@@ -0,0 +1,73 @@
+package com.example.javafxtest;
+
+/**
+ * An immutable class describing the size of the board: a grid of square canvases.
+ * The server decides the geometry of each room and sends it to every client that joins the room.
+ * <p>
+ * Canvases are numbered column by column, so canvas (column, row) has the ID column * rows + row.
+ */
+public class BoardGeometry {
+    // The board used if the server isn't told otherwise: 8x8 canvases of 100x100 pixels
+    public static final BoardGeometry DEFAULT = new BoardGeometry(8, 8, 100);
+
+    // Keeps the number of canvases and the size of a single canvas bitmap within an int
+    private static final int MAX_CANVASES = 1 << 20;
+    private static final int MAX_CANVAS_SIZE = 4096;
+
+    private final int columns;
+    private final int rows;
+    // The width and height of each canvas in pixels
+    private final int canvasSize;
+
+    public BoardGeometry(int columns, int rows, int canvasSize) {
+        if(columns < 1 || rows < 1 || (long) columns * rows > MAX_CANVASES) {
+            throw new IllegalArgumentException("Invalid board size: " + columns + "x" + rows);
+        }
+        if(canvasSize < 1 || canvasSize > MAX_CANVAS_SIZE) {
+            throw new IllegalArgumentException("Invalid canvas size: " + canvasSize);
+        }
+
+        this.columns = columns;
+        this.rows = rows;
+        this.canvasSize = canvasSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCanvasSize() {
+        return canvasSize;
+    }
+
+    public int getCanvasCount() {
+        return columns * rows;
+    }
+
+    /**
+     * @return The geometry in the format used by NetworkMessage: columns + 'x' + rows + '/' + canvasSize
+     */
+    @Override
+    public String toString() {
+        return columns + "x" + rows + "/" + canvasSize;
+    }
+
+    /**
+     * Reads a geometry written by toString
+     * @param value The geometry in the format: columns + 'x' + rows + '/' + canvasSize
+     * @return The geometry
+     */
+    public static BoardGeometry fromString(String value) {
+        String[] sizeFields = value.split("/", 2);
+        String[] gridFields = sizeFields[0].split("x", 2);
+        if(sizeFields.length != 2 || gridFields.length != 2) {
+            throw new IllegalArgumentException("Invalid board geometry: " + value);
+        }
+
+        return new BoardGeometry(Integer.parseInt(gridFields[0]), Integer.parseInt(gridFields[1]), Integer.parseInt(sizeFields[1]));
+    }
+}
@@ -0,0 +1,496 @@
+package com.example.javafxtest;
+
+import javafx.geometry.Orientation;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Draws the whole board on a single Canvas.
+ * <p>
+ * The Canvas is only as large as the visible part of the board. The board scrolls when it is larger than the screen.
+ * Each cell keeps the strokes drawn on it since it was last cleared or filled, so it can be repainted when it scrolls
+ * into view or when the local stroke is removed. Cells nothing has been drawn on don't keep any state.
+ * <p>
+ * Changes are recorded immediately and drawn by render, once per frame. New points are drawn as line segments and
+ * only cells marked dirty (cleared, filled, new border or removed stroke) are repainted, so the work done each frame
+ * depends on what changed rather than on the size of the board. Scrolling repaints the visible cells.
+ * <p>
+ * This class must only be used on the application thread.
+ */
+public class BoardView {
+    // The width of the border around each cell, and the space around and between cells. The same as the old layout
+    private static final int BORDER = 3;
+    private static final int HGAP = 10;
+    private static final int VGAP = 5;
+    private static final int PADDING = 10;
+    // The most points drawn by a single stroke() call
+    private static final int MAX_PATH_POINTS = 128;
+
+    private final BoardGeometry board;
+    private final int canvasSize;
+    // The distance between the top left corners of neighbouring cells
+    private final int pitchX;
+    private final int pitchY;
+
+    private final Canvas surface;
+    private final GraphicsContext graphics;
+    private final ScrollBar horizontal;
+    private final ScrollBar vertical;
+    private final BorderPane node;
+
+    // The state of each cell, indexed by canvasID. Null for a cell with a black border and nothing drawn on it
+    private final Cell[] cells;
+
+    // Cells that have to be repainted completely in the next frame
+    private final BitSet dirtyCells = new BitSet();
+    // Cells with points that haven't been drawn yet
+    private final List<Cell> growingCells = new ArrayList<>();
+    // True if every visible cell has to be repainted, e.g. after scrolling
+    private boolean repaintAll = true;
+
+    /**
+     * @param board The geometry of the board
+     * @param maxWidth The largest width of the visible part of the board
+     * @param maxHeight The largest height of the visible part of the board
+     */
+    public BoardView(BoardGeometry board, double maxWidth, double maxHeight) {
+        this.board = board;
+        canvasSize = board.getCanvasSize();
+        pitchX = canvasSize + 2 * BORDER + HGAP;
+        pitchY = canvasSize + 2 * BORDER + VGAP;
+        cells = new Cell[board.getCanvasCount()];
+
+        double boardWidth = 2 * PADDING + board.getColumns() * pitchX - HGAP;
+        double boardHeight = 2 * PADDING + board.getRows() * pitchY - VGAP;
+
+        surface = new Canvas(Math.min(boardWidth, maxWidth), Math.min(boardHeight, maxHeight));
+        graphics = surface.getGraphicsContext2D();
+
+        horizontal = new ScrollBar();
+        horizontal.setMax(boardWidth - surface.getWidth());
+        horizontal.setVisibleAmount(horizontal.getMax() * surface.getWidth() / boardWidth);
+        horizontal.valueProperty().addListener((observable, oldValue, newValue) -> repaintAll = true);
+
+        vertical = new ScrollBar();
+        vertical.setOrientation(Orientation.VERTICAL);
+        vertical.setMax(boardHeight - surface.getHeight());
+        vertical.setVisibleAmount(vertical.getMax() * surface.getHeight() / boardHeight);
+        vertical.valueProperty().addListener((observable, oldValue, newValue) -> repaintAll = true);
+
+        surface.setOnScroll(event -> {
+            horizontal.setValue(Math.max(0, Math.min(horizontal.getMax(), horizontal.getValue() - event.getDeltaX())));
+            vertical.setValue(Math.max(0, Math.min(vertical.getMax(), vertical.getValue() - event.getDeltaY())));
+        });
+
+        node = new BorderPane(surface);
+        if(horizontal.getMax() > 0) {
+            node.setBottom(horizontal);
+        }
+        if(vertical.getMax() > 0) {
+            node.setRight(vertical);
+        }
+    }
+
+    /**
+     * @return The node containing the board and its scroll bars
+     */
+    public BorderPane getNode() {
+        return node;
+    }
+
+    /**
+     * @return The Canvas the board is drawn on. Mouse events on it can be mapped to cells with getCellAt
+     */
+    public Canvas getSurface() {
+        return surface;
+    }
+
+    /**
+     * Gets the cell under a point on the surface, including the cell's border
+     * @param x The x coordinate on the surface
+     * @param y The y coordinate on the surface
+     * @return The ID of the cell, or -1 if the point isn't on a cell
+     */
+    public int getCellAt(double x, double y) {
+        double boardX = x + horizontal.getValue() - PADDING;
+        double boardY = y + vertical.getValue() - PADDING;
+        if(boardX < 0 || boardY < 0) {
+            return -1;
+        }
+
+        int column = (int) (boardX / pitchX);
+        int row = (int) (boardY / pitchY);
+        if(column >= board.getColumns() || row >= board.getRows()
+                || boardX - column * pitchX >= pitchX - HGAP || boardY - row * pitchY >= pitchY - VGAP) {
+            return -1;
+        }
+
+        return column * board.getRows() + row;
+    }
+
+    /**
+     * @param canvasID The ID of the cell
+     * @param x The x coordinate on the surface
+     * @return The x coordinate relative to the drawing area of the cell
+     */
+    public double toCellX(int canvasID, double x) {
+        return x - (getCellLeft(canvasID) - horizontal.getValue());
+    }
+
+    /**
+     * @param canvasID The ID of the cell
+     * @param y The y coordinate on the surface
+     * @return The y coordinate relative to the drawing area of the cell
+     */
+    public double toCellY(int canvasID, double y) {
+        return y - (getCellTop(canvasID) - vertical.getValue());
+    }
+
+    // The position of the drawing area of a cell on the whole board
+    private double getCellLeft(int canvasID) {
+        return PADDING + (canvasID / board.getRows()) * pitchX + BORDER;
+    }
+
+    private double getCellTop(int canvasID) {
+        return PADDING + (canvasID % board.getRows()) * pitchY + BORDER;
+    }
+
+    private Cell getCell(int canvasID) {
+        if(cells[canvasID] == null) {
+            cells[canvasID] = new Cell(canvasID);
+        }
+
+        return cells[canvasID];
+    }
+
+    /**
+     * Starts a new path on a cell
+     * @param canvasID The ID of the cell
+     * @param color The colour of the path
+     * @param x The x coordinate of the first point, relative to the cell
+     * @param y The y coordinate of the first point, relative to the cell
+     */
+    public void beginPath(int canvasID, Color color, double x, double y) {
+        Cell cell = getCell(canvasID);
+        cell.current = new Stroke(color);
+        cell.strokes.add(cell.current);
+        cell.current.add(x, y);
+        grew(cell);
+    }
+
+    /**
+     * Adds a line from the last point of the cell's current path. Starts a black path if no path has been started.
+     * @param canvasID The ID of the cell
+     * @param x The x coordinate of the point, relative to the cell
+     * @param y The y coordinate of the point, relative to the cell
+     */
+    public void lineTo(int canvasID, double x, double y) {
+        Cell cell = getCell(canvasID);
+        if(cell.current == null) {
+            beginPath(canvasID, Color.BLACK, x, y);
+            return;
+        }
+
+        cell.current.add(x, y);
+        grew(cell);
+    }
+
+    /**
+     * Starts the path this client draws on a cell. It is kept apart from the paths received from the server and drawn
+     * on top of them until it is removed with endLocalPath. A cell only has one local path.
+     * <p>
+     * The path is started as soon as the mouse is pressed, before the server has granted the cell. Clearing or
+     * filling the cell doesn't remove it, since the previous owner's clear or fill can be received after that.
+     */
+    public void beginLocalPath(int canvasID, Color color, double x, double y) {
+        Cell cell = getCell(canvasID);
+        cell.local = new Stroke(color);
+        cell.local.add(x, y);
+        grew(cell);
+    }
+
+    /**
+     * Adds a line from the last point of the cell's local path. Does nothing if the cell doesn't have one.
+     */
+    public void localLineTo(int canvasID, double x, double y) {
+        Cell cell = getCell(canvasID);
+        if(cell.local == null) {
+            return;
+        }
+
+        cell.local.add(x, y);
+        grew(cell);
+    }
+
+    /**
+     * Removes the local path of a cell
+     */
+    public void endLocalPath(int canvasID) {
+        Cell cell = cells[canvasID];
+        if(cell != null && cell.local != null) {
+            cell.local = null;
+            dirtyCells.set(canvasID);
+        }
+    }
+
+    /**
+     * Removes everything drawn on a cell except its local path and resets its border
+     */
+    public void clear(int canvasID) {
+        cells[canvasID] = keepLocalPath(canvasID, null);
+        dirtyCells.set(canvasID);
+    }
+
+    /**
+     * Fills a cell with a colour, replacing everything drawn on it, and resets its border
+     */
+    public void fill(int canvasID, Color color) {
+        Cell cell = new Cell(canvasID);
+        cell.fill = color;
+        cells[canvasID] = keepLocalPath(canvasID, cell);
+        dirtyCells.set(canvasID);
+    }
+
+    /**
+     * Moves the local path of a cell to the cell replacing it
+     * @param canvasID The ID of the cell
+     * @param replacement The new state of the cell, or null for an empty cell
+     * @return The new state of the cell
+     */
+    private Cell keepLocalPath(int canvasID, Cell replacement) {
+        Cell cell = cells[canvasID];
+        if(cell == null || cell.local == null) {
+            return replacement;
+        }
+
+        if(replacement == null) {
+            replacement = new Cell(canvasID);
+        }
+        replacement.local = cell.local;
+        return replacement;
+    }
+
+    public void setBorder(int canvasID, Color color) {
+        Cell cell = getCell(canvasID);
+        if(!color.equals(cell.border)) {
+            cell.border = color;
+            dirtyCells.set(canvasID);
+        }
+    }
+
+    private void grew(Cell cell) {
+        if(!cell.growing) {
+            cell.growing = true;
+            growingCells.add(cell);
+        }
+    }
+
+    /**
+     * Draws the changes made since the last call. Called once per frame.
+     */
+    public void render() {
+        double scrollX = horizontal.getValue();
+        double scrollY = vertical.getValue();
+
+        // The cells that are at least partly visible
+        int firstColumn = Math.max(0, (int) ((scrollX - PADDING) / pitchX));
+        int lastColumn = Math.min(board.getColumns() - 1, (int) ((scrollX + surface.getWidth() - PADDING) / pitchX));
+        int firstRow = Math.max(0, (int) ((scrollY - PADDING) / pitchY));
+        int lastRow = Math.min(board.getRows() - 1, (int) ((scrollY + surface.getHeight() - PADDING) / pitchY));
+
+        if(repaintAll) {
+            graphics.clearRect(0, 0, surface.getWidth(), surface.getHeight());
+            for(int column = firstColumn; column <= lastColumn; column++) {
+                for(int row = firstRow; row <= lastRow; row++) {
+                    repaint(column * board.getRows() + row, scrollX, scrollY);
+                }
+            }
+        }
+        else {
+            for(int canvasID = dirtyCells.nextSetBit(0); canvasID >= 0; canvasID = dirtyCells.nextSetBit(canvasID + 1)) {
+                if(isVisible(canvasID, firstColumn, lastColumn, firstRow, lastRow)) {
+                    repaint(canvasID, scrollX, scrollY);
+                }
+            }
+
+            for(Cell cell : growingCells) {
+                if(cells[cell.canvasID] == cell && !dirtyCells.get(cell.canvasID)
+                        && isVisible(cell.canvasID, firstColumn, lastColumn, firstRow, lastRow)) {
+                    drawNewSegments(cell, scrollX, scrollY);
+                }
+            }
+        }
+
+        // Cells that aren't visible are repainted completely once they scroll into view
+        for(Cell cell : growingCells) {
+            cell.markDrawn();
+            cell.growing = false;
+        }
+        growingCells.clear();
+        dirtyCells.clear();
+        repaintAll = false;
+    }
+
+    private boolean isVisible(int canvasID, int firstColumn, int lastColumn, int firstRow, int lastRow) {
+        int column = canvasID / board.getRows();
+        int row = canvasID % board.getRows();
+        return column >= firstColumn && column <= lastColumn && row >= firstRow && row <= lastRow;
+    }
+
+    /**
+     * Clears the area of a cell, including its border, and draws everything on it again
+     */
+    private void repaint(int canvasID, double scrollX, double scrollY) {
+        double left = getCellLeft(canvasID) - scrollX;
+        double top = getCellTop(canvasID) - scrollY;
+        Cell cell = cells[canvasID];
+
+        graphics.clearRect(left - BORDER, top - BORDER, canvasSize + 2 * BORDER, canvasSize + 2 * BORDER);
+
+        graphics.setStroke(cell == null ? Color.BLACK : cell.border);
+        graphics.setLineWidth(BORDER);
+        graphics.strokeRect(left - BORDER / 2.0, top - BORDER / 2.0, canvasSize + BORDER, canvasSize + BORDER);
+        graphics.setLineWidth(1);
+
+        if(cell == null) {
+            return;
+        }
+
+        if(cell.fill != null) {
+            graphics.setFill(cell.fill);
+            graphics.fillRect(left, top, canvasSize, canvasSize);
+        }
+
+        clipToCell(left, top);
+        for(Stroke stroke : cell.strokes) {
+            drawPoints(stroke, 0, left, top);
+        }
+        if(cell.local != null) {
+            drawPoints(cell.local, 0, left, top);
+        }
+        graphics.restore();
+    }
+
+    private void drawNewSegments(Cell cell, double scrollX, double scrollY) {
+        double left = getCellLeft(cell.canvasID) - scrollX;
+        double top = getCellTop(cell.canvasID) - scrollY;
+
+        clipToCell(left, top);
+        // Only the paths at the end of the list have new points. The lines start at the last point already drawn
+        int first = cell.strokes.size();
+        while(first > 0 && !cell.strokes.get(first - 1).isDrawn()) {
+            first--;
+        }
+        for(int i = first; i < cell.strokes.size(); i++) {
+            Stroke stroke = cell.strokes.get(i);
+            drawPoints(stroke, Math.max(0, stroke.drawnPoints - 1), left, top);
+        }
+        if(cell.local != null) {
+            drawPoints(cell.local, Math.max(0, cell.local.drawnPoints - 1), left, top);
+        }
+        graphics.restore();
+    }
+
+    private void clipToCell(double left, double top) {
+        graphics.save();
+        graphics.beginPath();
+        graphics.rect(left, top, canvasSize, canvasSize);
+        graphics.clip();
+
+        // A path is drawn in several pieces, each starting at the last point of the one before.
+        // Round caps cover the join between the pieces the same as a round join would
+        graphics.setLineCap(StrokeLineCap.ROUND);
+        graphics.setLineJoin(StrokeLineJoin.ROUND);
+    }
+
+    /**
+     * Strokes the lines of a path starting at the given point. Every stroke() call draws at most MAX_PATH_POINTS
+     * points, so the cost of drawing a point doesn't depend on the length of the path.
+     */
+    private void drawPoints(Stroke stroke, int from, double left, double top) {
+        graphics.setStroke(stroke.color);
+
+        while(stroke.pointCount - from >= 2) {
+            int to = Math.min(stroke.pointCount, from + MAX_PATH_POINTS);
+
+            graphics.beginPath();
+            graphics.moveTo(left + stroke.points[2 * from], top + stroke.points[2 * from + 1]);
+            for(int i = from + 1; i < to; i++) {
+                graphics.lineTo(left + stroke.points[2 * i], top + stroke.points[2 * i + 1]);
+            }
+            graphics.stroke();
+
+            from = to - 1;
+        }
+    }
+
+    /**
+     * The state of a single cell
+     */
+    private static class Cell {
+        private final int canvasID;
+        private Color border = Color.BLACK;
+        // The colour the cell is filled with, or null
+        private Color fill = null;
+        private final List<Stroke> strokes = new ArrayList<>();
+        // The path new points are added to. Null if no path has been started
+        private Stroke current = null;
+        // The path this client is drawing, drawn on top of the others. Null if the client isn't drawing on the cell
+        private Stroke local = null;
+        // True if the cell is in growingCells
+        private boolean growing = false;
+
+        Cell(int canvasID) {
+            this.canvasID = canvasID;
+        }
+
+        void markDrawn() {
+            for(int i = strokes.size() - 1; i >= 0 && !strokes.get(i).isDrawn(); i--) {
+                strokes.get(i).drawnPoints = strokes.get(i).pointCount;
+            }
+            if(local != null) {
+                local.drawnPoints = local.pointCount;
+            }
+        }
+    }
+
+    /**
+     * The points of one path, stored as x, y pairs
+     */
+    private static class Stroke {
+        private final Color color;
+        private double[] points = new double[32];
+        private int pointCount = 0;
+        // The number of points already drawn on the surface
+        private int drawnPoints = 0;
+
+        Stroke(Color color) {
+            this.color = color;
+        }
+
+        boolean isDrawn() {
+            return drawnPoints == pointCount;
+        }
+
+        void add(double x, double y) {
+            if(2 * pointCount == points.length) {
+                double[] grown = new double[points.length * 2];
+                System.arraycopy(points, 0, grown, 0, points.length);
+                points = grown;
+            }
+
+            points[2 * pointCount] = x;
+            points[2 * pointCount + 1] = y;
+            pointCount++;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.javafxtest;
+
+/**
+ * The area of each canvas covered by the strokes drawn on it. Used to decide if a canvas is claimed when the client
+ * drawing on it releases it.
+ * <p>
+ * Every canvas has a bitmap with one bit per pixel. Draw points are rasterised into it as they are drawn, joining the
+ * points of a path with lines the same way the canvas draws them, so the covered area is known at any time without
+ * reading the canvas pixels. A 1 pixel wide line is anti-aliased over 2 pixels so every point of a line covers a
+ * 2x2 block of pixels.
+ * <p>
+ * Lines are clipped to the canvas before they are rasterised, so the time taken by a point depends on the size of the
+ * canvas and not on how far away from it the point is. The server adds points received from clients, which can be
+ * anywhere.
+ * <p>
+ * A canvas only has a bitmap while something is drawn on it, so the memory used depends on the number of canvases
+ * being drawn on rather than the size of the board.
+ * <p>
+ * The server keeps the coverage that decides the claim. The client keeps the same coverage of the stroke points it
+ * sends, after they are simplified and quantised, to show the result as soon as the mouse is released.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class CanvasCoverage {
+
+    private final int width;
+    private final int height;
+
+    // The number of longs in a bitmap
+    private final int bitmapLength;
+    // One bitmap per canvas, indexed by canvasID. Bit (y * width + x) is set if pixel (x, y) is covered.
+    // Null if nothing is drawn on the canvas
+    private final long[][] bitmaps;
+    // The number of set bits in each bitmap
+    private final int[] coveredPixels;
+
+    // True if a path has been started on the canvas
+    private final boolean[] inPath;
+    // The last point of the current path on each canvas. It can be outside the canvas
+    private final double[] lastX;
+    private final double[] lastY;
+
+    // The part of the line being covered that is inside the clip rectangle, as fractions of the line. See clipLine
+    private double clipStart;
+    private double clipEnd;
+
+    public CanvasCoverage(int canvasCount, int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        bitmapLength = (width * height + 63) / 64;
+        bitmaps = new long[canvasCount][];
+        coveredPixels = new int[canvasCount];
+        inPath = new boolean[canvasCount];
+        lastX = new double[canvasCount];
+        lastY = new double[canvasCount];
+    }
+
+    /**
+     * Adds a draw point to the canvas, covering the line from the previous point of the path.
+     * @param canvasID The ID of the canvas
+     * @param x The x coordinate of the point in pixels
+     * @param y The y coordinate of the point in pixels
+     * @param pathStart True if the point starts a new path
+     * @throws IllegalArgumentException If a coordinate is infinite or NaN
+     */
+    public void addPoint(int canvasID, double x, double y, boolean pathStart) {
+        if(!Double.isFinite(x) || !Double.isFinite(y)) {
+            throw new IllegalArgumentException("Invalid draw point: " + x + ", " + y);
+        }
+
+        if(bitmaps[canvasID] == null) {
+            bitmaps[canvasID] = new long[bitmapLength];
+        }
+
+        if(pathStart || !inPath[canvasID]) {
+            coverLine(canvasID, x, y, x, y);
+        }
+        else {
+            coverLine(canvasID, lastX[canvasID], lastY[canvasID], x, y);
+        }
+
+        inPath[canvasID] = true;
+        lastX[canvasID] = x;
+        lastY[canvasID] = y;
+    }
+
+    /**
+     * Covers the blocks along the part of the line between two points that is on the canvas
+     */
+    private void coverLine(int canvasID, double x0, double y0, double x1, double y1) {
+        // A point up to 1.5 pixels outside the canvas still covers pixels on it
+        if(!clipLine(x0, y0, x1, y1, -2, -2, width + 2, height + 2)) {
+            return;
+        }
+
+        // An end that wasn't clipped is used as it is, so lines on the canvas cover exactly the same pixels
+        double startX = clipStart == 0 ? x0 : x0 + clipStart * (x1 - x0);
+        double startY = clipStart == 0 ? y0 : y0 + clipStart * (y1 - y0);
+        double endX = clipEnd == 1 ? x1 : x0 + clipEnd * (x1 - x0);
+        double endY = clipEnd == 1 ? y1 : y0 + clipEnd * (y1 - y0);
+
+        // The top left pixel of the 2x2 block covered by each end
+        coverLine(canvasID, (int) Math.floor(startX - 0.5), (int) Math.floor(startY - 0.5),
+                (int) Math.floor(endX - 0.5), (int) Math.floor(endY - 0.5));
+    }
+
+    /**
+     * Finds the part of a line inside a rectangle using the Liang-Barsky algorithm. The part found is stored in
+     * clipStart and clipEnd, which are both 0 to 1 along the line from the first point to the second.
+     * @return False if no part of the line is inside the rectangle
+     */
+    private boolean clipLine(double x0, double y0, double x1, double y1,
+                             double minX, double minY, double maxX, double maxY) {
+        clipStart = 0;
+        clipEnd = 1;
+
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        return clipEdge(-dx, x0 - minX) && clipEdge(dx, maxX - x0)
+                && clipEdge(-dy, y0 - minY) && clipEdge(dy, maxY - y0);
+    }
+
+    /**
+     * Clips the line to one edge of the rectangle
+     * @param direction How fast the line moves towards the outside of the edge
+     * @param distance How far inside the edge the first point is
+     * @return False if no part of the line is inside the edge
+     */
+    private boolean clipEdge(double direction, double distance) {
+        if(direction == 0) {
+            // The line is parallel to the edge
+            return distance >= 0;
+        }
+
+        double fraction = distance / direction;
+        if(direction < 0) {
+            // The line enters the rectangle through this edge
+            clipStart = Math.max(clipStart, fraction);
+        }
+        else {
+            // The line leaves the rectangle through this edge
+            clipEnd = Math.min(clipEnd, fraction);
+        }
+        return clipStart <= clipEnd;
+    }
+
+    /**
+     * Covers the blocks along the line between two pixels using Bresenham's algorithm
+     */
+    private void coverLine(int canvasID, int x0, int y0, int x1, int y1) {
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int stepX = x0 < x1 ? 1 : -1;
+        int stepY = y0 < y1 ? 1 : -1;
+        int error = dx + dy;
+
+        while(true) {
+            coverBlock(canvasID, x0, y0);
+            if(x0 == x1 && y0 == y1) {
+                return;
+            }
+
+            int doubleError = 2 * error;
+            if(doubleError >= dy) {
+                error += dy;
+                x0 += stepX;
+            }
+            if(doubleError <= dx) {
+                error += dx;
+                y0 += stepY;
+            }
+        }
+    }
+
+    private void coverBlock(int canvasID, int x, int y) {
+        coverPixel(canvasID, x, y);
+        coverPixel(canvasID, x + 1, y);
+        coverPixel(canvasID, x, y + 1);
+        coverPixel(canvasID, x + 1, y + 1);
+    }
+
+    private void coverPixel(int canvasID, int x, int y) {
+        if(x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+
+        int index = y * width + x;
+        long[] bitmap = bitmaps[canvasID];
+        long bit = 1L << index;
+        if((bitmap[index >>> 6] & bit) == 0) {
+            bitmap[index >>> 6] |= bit;
+            coveredPixels[canvasID]++;
+        }
+    }
+
+    /**
+     * @param canvasID The ID of the canvas
+     * @return The percentage of the canvas covered by strokes
+     */
+    public double getCoverage(int canvasID) {
+        return coveredPixels[canvasID] * 100.0 / (width * height);
+    }
+
+    /**
+     * @param canvasID The ID of the canvas
+     * @return True if more than half of the canvas is covered, meaning the client drawing on it claims it
+     */
+    public boolean isClaimed(int canvasID) {
+        return coveredPixels[canvasID] * 2 > width * height;
+    }
+
+    /**
+     * Removes every stroke from the canvas
+     * @param canvasID The ID of the canvas
+     */
+    public void clear(int canvasID) {
+        bitmaps[canvasID] = null;
+        coveredPixels[canvasID] = 0;
+        inPath[canvasID] = false;
+    }
+}
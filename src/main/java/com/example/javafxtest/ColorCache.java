@@ -0,0 +1,105 @@
+package com.example.javafxtest;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Shares the Color objects decoded from network messages.
+ * <p>
+ * Every drawing received carries its colour, but a game only uses a handful of colours. Looking the colour up here
+ * instead of creating a new Color for every message means decoding a drawing allocates nothing once its colour has
+ * been seen.
+ * <p>
+ * The cache is a fixed size table indexed by the colour's 8 bit RGBA value (see toRGBA). Colours that land on the same
+ * entry replace each other, which only costs a new Color.
+ * <p>
+ * This class is thread-safe. Entries are immutable, so a thread either sees a whole entry or an older one.
+ */
+public final class ColorCache {
+    // The number of entries. Must be a power of 2
+    private static final int SIZE = 256;
+
+    private static final Entry[] entries = new Entry[SIZE];
+
+    private static final class Entry {
+        private final int rgba;
+        private final Color color;
+        // True if the colour is exactly the colour of its 8 bit RGBA value
+        private final boolean exact;
+
+        private Entry(int rgba, Color color) {
+            this.rgba = rgba;
+            this.color = color;
+            exact = matches(color, ((rgba >>> 24) & 0xFF) / 255.0, ((rgba >>> 16) & 0xFF) / 255.0,
+                    ((rgba >>> 8) & 0xFF) / 255.0, (rgba & 0xFF) / 255.0);
+        }
+    }
+
+    private ColorCache() {}
+
+    /**
+     * Gets the colour with the given 8 bit RGBA value
+     * @param rgba The encoded colour, see toRGBA
+     * @return The colour
+     */
+    public static Color get(int rgba) {
+        int index = indexOf(rgba);
+        Entry entry = entries[index];
+        if(entry != null && entry.rgba == rgba && entry.exact) {
+            return entry.color;
+        }
+
+        Color color = Color.rgb((rgba >>> 24) & 0xFF, (rgba >>> 16) & 0xFF, (rgba >>> 8) & 0xFF, (rgba & 0xFF) / 255.0);
+        entries[index] = new Entry(rgba, color);
+        return color;
+    }
+
+    /**
+     * Gets the colour with the given components
+     * @return A colour equal to new Color(red, green, blue, opacity)
+     */
+    public static Color get(double red, double green, double blue, double opacity) {
+        int rgba = toRGBA(red, green, blue, opacity);
+        int index = indexOf(rgba);
+        Entry entry = entries[index];
+        if(entry != null && matches(entry.color, red, green, blue, opacity)) {
+            return entry.color;
+        }
+
+        Color color = new Color(red, green, blue, opacity);
+        entries[index] = new Entry(rgba, color);
+        return color;
+    }
+
+    /**
+     * @return True if the colour is equal to new Color(red, green, blue, opacity). Color keeps its components as floats
+     */
+    private static boolean matches(Color color, double red, double green, double blue, double opacity) {
+        return color.getRed() == (float) red && color.getGreen() == (float) green
+                && color.getBlue() == (float) blue && color.getOpacity() == (float) opacity;
+    }
+
+    private static int indexOf(int rgba) {
+        // Spread the bits so colours that only differ in one channel use different entries
+        int hash = rgba * 0x9E3779B9;
+        return hash >>> (Integer.SIZE - Integer.numberOfTrailingZeros(SIZE));
+    }
+
+    /**
+     * Encodes a colour as 8 bit RGBA: each component is rounded to 0-255 and packed with red in the highest byte and
+     * opacity in the lowest. This is how colours are identified in network messages and in a room's palette, so two
+     * colours with the same value are the same colour to the server
+     * @param color The colour
+     * @return The encoded colour
+     */
+    public static int toRGBA(Color color) {
+        return toRGBA(color.getRed(), color.getGreen(), color.getBlue(), color.getOpacity());
+    }
+
+    /**
+     * @return The 8 bit RGBA value of the colour with the given components
+     */
+    private static int toRGBA(double red, double green, double blue, double opacity) {
+        return ((int) Math.round(red * 255) << 24) | ((int) Math.round(green * 255) << 16)
+                | ((int) Math.round(blue * 255) << 8) | (int) Math.round(opacity * 255);
+    }
+}
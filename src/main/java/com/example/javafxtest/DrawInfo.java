@@ -25,6 +25,8 @@ public class DrawInfo {
 
     private final boolean ownCanvas;
 
+    // Gson instances are thread-safe, so a single one is shared instead of building one for every message
+    private static final Gson GSON = new GsonBuilder().registerTypeAdapter(DrawInfo.class, new DrawInfoAdapter()).create();
 
     public DrawInfo(double x, double y, int canvasID, Color color, boolean pathStart, boolean clearCanvas, boolean ownCanvas) {
         this.x = x;
@@ -67,17 +69,11 @@ public class DrawInfo {
 
 
     public static String toJson(DrawInfo drawInfo) {
-        GsonBuilder builder = new GsonBuilder();
-        builder.registerTypeAdapter(DrawInfo.class, new DrawInfoAdapter());
-        Gson gson = builder.create();
-        return gson.toJson(drawInfo);
+        return GSON.toJson(drawInfo);
     }
 
     public static DrawInfo fromJson(String json) {
-        GsonBuilder builder = new GsonBuilder();
-        builder.registerTypeAdapter(DrawInfo.class, new DrawInfoAdapter());
-        Gson gson = builder.create();
-        return gson.fromJson(json, DrawInfo.class);
+        return GSON.fromJson(json, DrawInfo.class);
     }
 
 }
@@ -180,7 +176,7 @@ class DrawInfoAdapter extends TypeAdapter<DrawInfo> {
 
         jsonReader.endObject();
 
-        color = new Color(colorRed, colorGreen, colorBlue, colorOpacity);
+        color = ColorCache.get(colorRed, colorGreen, colorBlue, colorOpacity);
         return new DrawInfo(x, y, canvasID, color, pathStart, clearCanvas, ownCanvas);
     }
 }
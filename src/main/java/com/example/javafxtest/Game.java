@@ -1,25 +1,30 @@
 package com.example.javafxtest;
 
 import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Label;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
+import networking.client.DrawRecord;
 import networking.client.NetworkClient;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public class Game {
-    private Canvas[] canvases;
+    private final BoardView boardView;
     private NetworkClient networkClient;
 
     private static Label scoresLabel;
@@ -28,35 +33,28 @@ public class Game {
     private static Rectangle clientColorRect;
     private int score = 0;
 
-    Game(Stage primaryStage, NetworkClient client) {
-        canvases = new Canvas[64];
+    // The canvas the mouse was pressed on, or -1. The fields below are only used on the application thread
+    private int pressedCanvasID = -1;
+    // True once the server granted the pressed canvas
+    private boolean drawing = false;
+    // True if the mouse was released before the server responded
+    private boolean mouseReleased = false;
+    // Points drawn speculatively on the pressed canvas before the server responded. The format is: x, y, time
+    private final List<double[]> pendingPoints = new ArrayList<>();
 
-        this.networkClient = client;
-        GridPane grid = new GridPane();
+    // The time spent handling received messages in each frame. About half of a frame at 60 fps
+    private static final long FRAME_BUDGET = TimeUnit.MILLISECONDS.toNanos(8);
 
-        for(int j=0; j<64; j++){
-            Canvas canvas = new Canvas(100, 100);
-            canvases[j] = canvas;
-            canvas.setId(Integer.toString(j));
-        }
-        int count = 0;
-        for (int i= 0; i< 8 ; i++){
-            for (int j= 0; j< 8; j++){
-                // Put the canvases inside a StackPane and give the StackPane a border
-                StackPane pane = new StackPane(canvases[count]);
-                pane.setBorder(new Border(new BorderStroke(Color.BLACK, BorderStrokeStyle.SOLID, null, new BorderWidths(3) )));
-
-                grid.add(pane, i, j,1,1);
-                final GraphicsContext graphicsContext = canvases[count].getGraphicsContext2D();
-                makeCanvasDrawable(graphicsContext, canvases[count]);
-                count++;
-            }
-        }
+    Game(Stage primaryStage, NetworkClient client) {
+        this.networkClient = client;
 
-        grid.setHgap(10);
-        grid.setVgap(5);
+        // The size of the board is decided by the server
+        BoardGeometry board = networkClient.board;
 
-        grid.setPadding(new Insets(10,10,10,10));
+        // The whole board is drawn on a single Canvas which scrolls if the board is larger than the screen
+        Rectangle2D screen = Screen.getPrimary().getVisualBounds();
+        boardView = new BoardView(board, screen.getWidth() - 60, screen.getHeight() - 160);
+        makeBoardDrawable();
 
         playerColorLabel = new Label( "Your Color: " );
         playerColorLabel.setFont(new Font("Arial", 20));
@@ -78,11 +76,11 @@ public class Game {
         GridPane.setConstraints(playerColorLabel, 0,0);
         GridPane.setConstraints(clientColorRect, 0,0);
         GridPane.setConstraints(scoresLabel, 0, 1);
-        GridPane.setConstraints(grid, 0, 2);
+        GridPane.setConstraints(boardView.getNode(), 0, 2);
 
         GridPane.setMargin(clientColorRect, new Insets(5,5,5,135));
-        root.getChildren().addAll(playerColorLabel,clientColorRect, scoresLabel, grid);
-        Scene scene = new Scene(root, grid.getPrefWidth(), grid.getPrefHeight());
+        root.getChildren().addAll(playerColorLabel,clientColorRect, scoresLabel, boardView.getNode());
+        Scene scene = new Scene(root);
         primaryStage.setScene(scene);
         primaryStage.show();
 
@@ -95,147 +93,167 @@ public class Game {
     }
 
 
-    private void makeCanvasDrawable(GraphicsContext graphicsContext, Canvas canvas) {
-        int thisCanvasId = Integer.parseInt(canvas.getId());
+    private void makeBoardDrawable() {
+        Canvas surface = boardView.getSurface();
 
-        canvas.addEventHandler(MouseEvent.MOUSE_PRESSED,
+        // One set of handlers for the whole board. Points are relative to the pressed cell, even outside of it
+        surface.addEventHandler(MouseEvent.MOUSE_PRESSED,
                 new EventHandler<MouseEvent>(){
                     @Override
                     public void handle(MouseEvent event) {
+                        int canvasID = boardView.getCellAt(event.getX(), event.getY());
 
-                        // If the canvas isn't drawable then something should indicate this to the player
-                        if(!networkClient.selectCanvasForDrawing(thisCanvasId)) {
+                        // A previous stroke is still waiting for the server
+                        if(canvasID == -1 || pressedCanvasID != -1) {
                             return;
                         }
 
-                        graphicsContext.setStroke(networkClient.clientColor);
-                        graphicsContext.beginPath();
-                        graphicsContext.moveTo(event.getX(), event.getY());
-                        graphicsContext.stroke();
+                        pressedCanvasID = canvasID;
+                        mouseReleased = false;
+                        double x = boardView.toCellX(canvasID, event.getX());
+                        double y = boardView.toCellY(canvasID, event.getY());
+
+                        // Start drawing straight away with a speculative stroke. It is sent if the server grants
+                        // the canvas and rolled back otherwise
+                        boardView.beginLocalPath(canvasID, networkClient.clientColor, x, y);
+                        pendingPoints.add(new double[] {x, y, NetworkClient.getStrokeTime()});
 
-                        networkClient.sendDrawing(event.getX(), event.getY());
+                        networkClient.selectCanvasForDrawingAsync(canvasID).whenComplete((success, exception) ->
+                                Platform.runLater(() -> canvasSelected(Boolean.TRUE.equals(success))));
                     }
                 });
 
-        canvas.addEventHandler(MouseEvent.MOUSE_DRAGGED,
+        surface.addEventHandler(MouseEvent.MOUSE_DRAGGED,
                 new EventHandler<MouseEvent>(){
                     @Override
                     public void handle(MouseEvent event) {
 
-                        if(networkClient.currentCanvasID != thisCanvasId) {
+                        if(pressedCanvasID == -1 || mouseReleased) {
                             return;
                         }
-                        graphicsContext.lineTo(event.getX(), event.getY());
-                        graphicsContext.stroke();
 
-                        networkClient.sendDrawing(event.getX(), event.getY());
+                        double x = boardView.toCellX(pressedCanvasID, event.getX());
+                        double y = boardView.toCellY(pressedCanvasID, event.getY());
+
+                        boardView.localLineTo(pressedCanvasID, x, y);
+                        if(!drawing) {
+                            pendingPoints.add(new double[] {x, y, NetworkClient.getStrokeTime()});
+                            return;
+                        }
+
+                        networkClient.sendDrawing(x, y);
                     }
                 });
 
-        canvas.addEventHandler(MouseEvent.MOUSE_RELEASED,
+        surface.addEventHandler(MouseEvent.MOUSE_RELEASED,
                 new EventHandler<MouseEvent>(){
                     @Override
                     public void handle(MouseEvent event) {
-                        double fillPercentage = computeFillPercentage(graphicsContext);
 
                         //prevent mouse release to clear the canvas.
-                        if(networkClient.currentCanvasID != thisCanvasId) {
+                        if(pressedCanvasID == -1 || mouseReleased) {
                             return;
                         }
 
-                        if(fillPercentage > 50) {
-                            networkClient.sendLockCanvasRequest();
-                            graphicsContext.setFill(networkClient.clientColor);
-                            graphicsContext.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
-                            score += 10;
-                            scoresLabel.setText("Your Score:   " + score);//displaying score on clients' canvas
-                            networkClient.sendOwnCanvas();
-                            networkClient.sendScore(score); // sending scores
-                        }
-                        else {
-                            // CLEAR CANVAS
-                            graphicsContext.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
-                            networkClient.sendClearCanvas();
+                        // The stroke is finished once the server responds
+                        if(!drawing) {
+                            mouseReleased = true;
+                            return;
                         }
 
-                        System.out.println("filled %: " + fillPercentage);
-                        networkClient.releaseCanvas();
+                        finishStroke();
                     }
                 });
     }
 
+    /**
+     * Called on the application thread once the server has responded to the canvas request of the pressed canvas.
+     * If the canvas was granted the speculative stroke is sent, otherwise it is rolled back.
+     */
+    private void canvasSelected(boolean success) {
+        // Removing the stroke shows the player the canvas isn't drawable
+        if(!success) {
+            boardView.endLocalPath(pressedCanvasID);
+            pressedCanvasID = -1;
+            pendingPoints.clear();
+            return;
+        }
+
+        // The stroke stays the board's local path until it is finished, so the previous owner's clear, which can
+        // still be waiting in the network inputs, doesn't remove it
+        drawing = true;
+        for(double[] point : pendingPoints) {
+            networkClient.sendDrawing(point[0], point[1], (int) point[2]);
+        }
+        pendingPoints.clear();
+
+        if(mouseReleased) {
+            finishStroke();
+        }
+    }
+
+    private void finishStroke() {
+        // The server decides if the canvas is claimed and tells every client, including this one.
+        // The network client keeps the coverage of the points it sent so the result is shown straight away instead
+        // of after the server's response
+        boardView.endLocalPath(pressedCanvasID);
+        if(networkClient.releaseCanvas()) {
+            boardView.fill(pressedCanvasID, networkClient.clientColor);
+        }
+        else {
+            boardView.clear(pressedCanvasID);
+        }
+
+        pressedCanvasID = -1;
+        drawing = false;
+        mouseReleased = false;
+    }
+
     private AnimationTimer getAnimationTimer() {
         AnimationTimer animationTimer = new AnimationTimer() {
             @Override
             public void handle(long l) {
-                // Only try to draw if the queue has something to draw
-                while(networkClient.networkInputs.areInputsAvailable()){
-                    DrawInfo info = networkClient.networkInputs.getNextInput();
-                    GraphicsContext drawContext = canvases[info.getCanvasID()].getGraphicsContext2D();
-                    Canvas currentCanvas = canvases[info.getCanvasID()];
-
-                    if(info.isClearCanvas()){
-                        drawContext.clearRect(0, 0, currentCanvas.getWidth(), currentCanvas.getHeight());
-                        ((StackPane)canvases[info.getCanvasID()].getParent()).setBorder(new Border(new BorderStroke(Color.BLACK, BorderStrokeStyle.SOLID, null, new BorderWidths(3) )));
-                    }
-                    else if(info.isOwnCanvas()){
-                        drawContext.setFill(info.getColor());
-                        drawContext.fillRect(0, 0, currentCanvas.getWidth(), currentCanvas.getHeight());
-                        ((StackPane)canvases[info.getCanvasID()].getParent()).setBorder(new Border(new BorderStroke(Color.BLACK, BorderStrokeStyle.SOLID, null, new BorderWidths(3) )));
-                    }
-                    else if(info.isPathStart()) {
-                        ((StackPane)canvases[info.getCanvasID()].getParent()).setBorder(new Border(new BorderStroke(info.getColor(), BorderStrokeStyle.SOLID, null, new BorderWidths(3) )));
-                        drawContext.setStroke(info.getColor());
-                        drawContext.beginPath();
-                        drawContext.moveTo(info.getX(), info.getY());
-                        drawContext.stroke();
-                    }
-
-                    else {
-                        drawContext.lineTo(info.getX(), info.getY());
-                        drawContext.stroke();
-                    }
-                }
+                // Only handle messages for part of the frame. Anything left in the queue is handled in the next frames
+                // so a burst of messages can't freeze the UI
+                long deadline = System.nanoTime() + FRAME_BUDGET;
+                networkClient.networkInputs.handleInputs(Game.this::drawReceived, deadline);
 
+                // Draws the local and received changes together
+                boardView.render();
             }
         };
         return animationTimer;
     }
 
+    /**
+     * Draws a drawing received from the server
+     * @param info The drawing. It is reused once this method returns
+     */
+    private void drawReceived(DrawRecord info) {
+        int canvasID = info.getCanvasID();
 
-    private double computeFillPercentage(GraphicsContext graphicsContext) {
-
-        // converts canvas cell to a writable image
-        WritableImage image = graphicsContext.getCanvas().snapshot(null, null);
-
-        // obtains PixelReader from the snap
-        PixelReader pixelReader = image.getPixelReader();
-
-        double snapHeight = image.getHeight();
-        double snapWidth = image.getWidth();
-        double coloredPixels = 0;
-        double totalPixels = (snapHeight * snapWidth);
-
-        String hexColor = String.valueOf(networkClient.clientColor);
-
-        // computes the number of colored pixels
-        for (int readY = 0; readY < snapHeight; readY++) {
-            for (int readX = 0; readX < snapWidth; readX++) {
-                Color color = pixelReader.getColor(readX, readY);
+        if(info.isClearCanvas()){
+            boardView.clear(canvasID);
+        }
+        else if(info.isOwnCanvas()){
+            boardView.fill(canvasID, info.getColor());
 
-                // checks if a pixel is colored with PenColor
-                if (color.getRed() < 1 || color.getGreen() < 1 || color.getBlue() < 1){
-                    coloredPixels += 1;
-                }
+            // The server sends the colour in 8 bits per channel so compare the encoded colours
+            if(ColorCache.toRGBA(info.getColor()) == ColorCache.toRGBA(networkClient.clientColor)) {
+                score += 10;
+                scoresLabel.setText("Your Score:   " + score);//displaying score on clients' canvas
             }
         }
+        else if(info.isPathStart()) {
+            boardView.setBorder(canvasID, info.getColor());
+            boardView.beginPath(canvasID, info.getColor(), info.getX(), info.getY());
+        }
 
-        // computes colored area percentage
-        double fillPercentage = (coloredPixels / totalPixels) * 100.0;
-        return fillPercentage;
+        else {
+            boardView.lineTo(canvasID, info.getX(), info.getY());
+        }
     }
 
-
     //this method runs only when the game ends, and it updates the UI
     public static class GameEndResults implements Runnable{
 
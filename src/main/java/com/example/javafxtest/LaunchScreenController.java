@@ -2,6 +2,7 @@ package com.example.javafxtest;
 
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.application.Platform;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -31,6 +32,8 @@ public class LaunchScreenController {
     @FXML
     private TextField portText;
     @FXML
+    private TextField roomText;
+    @FXML
     private Text connectMessage;
     @FXML
     private GridPane colorGrid;
@@ -120,6 +123,8 @@ public class LaunchScreenController {
         // The default host and port are the prompt text
         String host = hostName.getText().isBlank() ? hostName.getPromptText() : hostName.getText();
         String port = portText.getText().isBlank() ? portText.getPromptText() : portText.getText();
+        // A blank room name means the server's default room
+        String room = roomText.getText().strip();
 
         // Attempt to connect in another thread to prevent UI from freezing during the processes
         Thread connectThread = new Thread(() -> {
@@ -128,7 +133,12 @@ public class LaunchScreenController {
                 connectMessage.setText("Connecting...");
                 connectMessage.setVisible(true);
 
-                networkClient = new NetworkClient(host, port);
+                networkClient = new NetworkClient(host, port, true);
+                if(!room.isEmpty() && !networkClient.joinRoom(room)) {
+                    connectMessage.setFill(Color.RED);
+                    connectMessage.setText("Unable to join room");
+                    return;
+                }
 
                 // Only reaches here if no exceptions
                 connectMessage.setText("Connection Successful");
@@ -153,18 +163,28 @@ public class LaunchScreenController {
 
     @FXML
     private void registerColorButtonClicked(MouseEvent e) {
-        boolean success = networkClient.registerColor((Color)selectedColorCanvas.getGraphicsContext2D().getFill());
-        if(success) {
-            colorMessage.setFill(Color.BLACK);
-            colorMessage.setText("Colour Registered     "); // Extra spaces prevent UI from moving when text changes
-            startGameButton.setDisable(false);
-        }
-        else {
-            colorMessage.setFill(Color.RED);
-            colorMessage.setText("Colour already in use");
-        }
+        // The UI is updated once the server responds, the application thread never waits for the network
+        registerColorButton.setDisable(true);
+        networkClient.registerColorAsync((Color)selectedColorCanvas.getGraphicsContext2D().getFill())
+                .whenComplete((success, exception) -> Platform.runLater(() -> {
+                    registerColorButton.setDisable(false);
+
+                    if(exception != null) {
+                        colorMessage.setFill(Color.RED);
+                        colorMessage.setText("Server not responding");
+                    }
+                    else if(success) {
+                        colorMessage.setFill(Color.BLACK);
+                        colorMessage.setText("Colour Registered     "); // Extra spaces prevent UI from moving when text changes
+                        startGameButton.setDisable(false);
+                    }
+                    else {
+                        colorMessage.setFill(Color.RED);
+                        colorMessage.setText("Colour already in use");
+                    }
 
-        colorMessage.setVisible(true);
+                    colorMessage.setVisible(true);
+                }));
     }
 
     @FXML
@@ -0,0 +1,114 @@
+package com.example.javafxtest;
+
+import javafx.scene.paint.Color;
+import networking.ColorPalette;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable class containing a run of points drawn as part of one stroke on one canvas.
+ * Used for sending drawings over the network without repeating the canvas, colour and flags for every point.
+ * The colour is the palette index the server gave it, see ColorPalette.
+ */
+public class StrokeBatch {
+    private final int canvasID;
+    private final int colorIndex;
+    // True if the first point starts a new path
+    private final boolean pathStart;
+
+    private final double[] xs;
+    private final double[] ys;
+    // The time each point was drawn in milliseconds on the sender's clock, or null if the times aren't known
+    private final int[] times;
+
+    /**
+     * @param canvasID The canvas the stroke is drawn on
+     * @param colorIndex The palette index of the colour of the stroke
+     * @param pathStart True if the first point starts a new path
+     * @param xs The x coordinates of the points. The array must not be changed afterwards.
+     * @param ys The y coordinates of the points. The array must not be changed afterwards.
+     */
+    public StrokeBatch(int canvasID, int colorIndex, boolean pathStart, double[] xs, double[] ys) {
+        this(canvasID, colorIndex, pathStart, xs, ys, null);
+    }
+
+    /**
+     * @param canvasID The canvas the stroke is drawn on
+     * @param colorIndex The palette index of the colour of the stroke
+     * @param pathStart True if the first point starts a new path
+     * @param xs The x coordinates of the points. The array must not be changed afterwards.
+     * @param ys The y coordinates of the points. The array must not be changed afterwards.
+     * @param times The time each point was drawn in milliseconds on the sender's clock, or null. Only the differences
+     *              between times are meaningful. The array must not be changed afterwards.
+     */
+    public StrokeBatch(int canvasID, int colorIndex, boolean pathStart, double[] xs, double[] ys, int[] times) {
+        if(xs.length != ys.length || (times != null && times.length != xs.length)) {
+            throw new IllegalArgumentException("Every point needs an x and a y coordinate");
+        }
+
+        this.canvasID = canvasID;
+        this.colorIndex = colorIndex;
+        this.pathStart = pathStart;
+        this.xs = xs;
+        this.ys = ys;
+        this.times = times;
+    }
+
+    public int getCanvasID() {
+        return canvasID;
+    }
+
+    /**
+     * @return The palette index of the colour of the stroke
+     */
+    public int getColorIndex() {
+        return colorIndex;
+    }
+
+    public boolean isPathStart() {
+        return pathStart;
+    }
+
+    public int getPointCount() {
+        return xs.length;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return True if the batch contains the time each point was drawn
+     */
+    public boolean hasTimes() {
+        return times != null;
+    }
+
+    /**
+     * @param index The index of the point
+     * @return The time the point was drawn in milliseconds on the sender's clock
+     */
+    public int getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Converts the batch to one DrawInfo per point, the same as if every point had been sent separately
+     * @param palette The palette of the room the batch was drawn in
+     * @return The drawings in the order they were drawn
+     */
+    public List<DrawInfo> toDrawInfos(ColorPalette palette) {
+        Color color = palette.get(colorIndex);
+        List<DrawInfo> draws = new ArrayList<>(xs.length);
+        for(int i = 0; i < xs.length; i++) {
+            draws.add(new DrawInfo(xs[i], ys[i], canvasID, color, pathStart && i == 0, false, false));
+        }
+
+        return draws;
+    }
+}
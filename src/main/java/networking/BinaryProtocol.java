@@ -0,0 +1,642 @@
+package networking;
+
+import com.example.javafxtest.ColorCache;
+import com.example.javafxtest.DrawInfo;
+import com.example.javafxtest.StrokeBatch;
+import javafx.scene.paint.Color;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A class containing static fields and methods for the binary wire protocol.
+ * <p>
+ * The binary protocol is negotiated when a client connects. The client sends NetworkMessage.generateProtocolMessage
+ * as its first line and the server answers with a PROTOCOL line of its own. If both sides agree on BINARY then every
+ * message after that is a frame instead of a line of text.
+ * <p>
+ * Frame format:
+ *      int32  length   The number of bytes following the length field. At most MAX_FRAME_SIZE
+ *      byte   opcode   The message type. Each opcode stands for one NetworkMessage header (see MessageType).
+ *                      If the REQUEST_ID_FLAG bit is set the opcode is followed by an int32 request ID
+ *      byte[] payload  The rest of the frame
+ * <p>
+ * Payload formats:
+ *      Draw messages use a fixed width layout (see encodeDraw):
+ *          float32 x, float32 y, int32 canvasID, int32 colour (RGBA, 8 bits each, see encodeColor),
+ *          byte flags (bit 0 pathStart, bit 1 clearCanvas, bit 2 ownCanvas)
+ *      Stroke batches use a variable width layout (see encodeStrokeBatch):
+ *          varint canvasID, varint colour (its palette index, see ColorPalette), byte flags (bit 0 pathStart,
+ *          bit 1 timed), varint point count,
+ *          then for each point a zigzag varint x and y. Coordinates are quantised to 1/STROKE_QUANTISATION of a pixel
+ *          and every point except the first is stored as the difference to the previous point.
+ *          Timed batches end with the time the points were drawn: int32 time of the first point in milliseconds on
+ *          the sender's clock, then for each other point a varint of the milliseconds since the previous point.
+ *          The text form of a stroke batch is the Base64 encoding of this payload.
+ *      All other messages use the UTF-8 bytes of the data section of the equivalent text message.
+ * <p>
+ * All numbers are big-endian.
+ */
+public class BinaryProtocol {
+
+    // The largest frame a peer is allowed to send. Larger frames are treated as a protocol error.
+    public static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    // The longest line accepted before the protocol is negotiated
+    public static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    public static final int DRAW_PAYLOAD_SIZE = 17;
+
+    // Stroke batch coordinates are rounded to 1/8 of a pixel
+    public static final int STROKE_QUANTISATION = 8;
+
+    private static final int FLAG_PATH_START = 1;
+    private static final int FLAG_CLEAR_CANVAS = 1 << 1;
+    private static final int FLAG_OWN_CANVAS = 1 << 2;
+    // Only used by stroke batches
+    private static final int FLAG_TIMED = 1 << 1;
+
+    // The same as MessageType.DRAW.getOpcode() and MessageType.STROKE_BATCH.getOpcode()
+    public static final byte DRAW_OPCODE = 0;
+    public static final byte STROKE_BATCH_OPCODE = 13;
+
+    // Set in the opcode of frames that carry a request ID. See NetworkMessage.REQUEST_ID_SEPARATOR
+    public static final byte REQUEST_ID_FLAG = (byte) 0x80;
+
+    /**
+     * Gets the opcode used for a text message header
+     * @param header The header
+     * @return The opcode
+     */
+    public static byte getOpcode(String header) {
+        return MessageType.fromHeader(header, 0, header.length()).getOpcode();
+    }
+
+    /**
+     * Gets the text message header that an opcode stands for
+     * @param opcode The opcode
+     * @return The header
+     */
+    public static String getHeader(byte opcode) {
+        return MessageType.fromOpcode(opcode).getHeader();
+    }
+
+    /**
+     * Encodes a text message (header + '-' + data) as a frame.
+     * Draw messages are converted to the fixed width draw layout.
+     * @param message The text message
+     * @return The encoded frame, including the length prefix
+     */
+    public static byte[] encodeFrame(String message) {
+        int requestID = NetworkMessage.getRequestID(message);
+        String[] parts = NetworkMessage.removeRequestID(message).split("-", 2);
+
+        if(requestID != 0) {
+            return encodeFrame(getOpcode(parts[0]), requestID, parts[1].getBytes(StandardCharsets.UTF_8));
+        }
+
+        if(parts[0].equals(NetworkMessage.DRAW_MESSAGE_HEADER)) {
+            return encodeDrawFrame(DrawInfo.fromJson(parts[1]));
+        }
+        if(parts[0].equals(NetworkMessage.STROKE_BATCH_HEADER)) {
+            return encodeFrame(STROKE_BATCH_OPCODE, Base64.getDecoder().decode(parts[1]));
+        }
+
+        return encodeFrame(getOpcode(parts[0]), parts[1].getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encodes a frame with the given opcode and payload
+     * @param opcode The opcode of the message
+     * @param payload The payload of the message
+     * @return The encoded frame, including the length prefix
+     */
+    public static byte[] encodeFrame(byte opcode, byte[] payload) {
+        if(payload.length + 1 > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Message too large for a single frame");
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(5 + payload.length);
+        frame.putInt(payload.length + 1);
+        frame.put(opcode);
+        frame.put(payload);
+        return frame.array();
+    }
+
+    /**
+     * Encodes a frame carrying a request ID
+     * @param opcode The opcode of the message
+     * @param requestID The request ID
+     * @param payload The payload of the message
+     * @return The encoded frame, including the length prefix
+     */
+    public static byte[] encodeFrame(byte opcode, int requestID, byte[] payload) {
+        if(payload.length + 5 > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Message too large for a single frame");
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(9 + payload.length);
+        frame.putInt(payload.length + 5);
+        frame.put((byte) (opcode | REQUEST_ID_FLAG));
+        frame.putInt(requestID);
+        frame.put(payload);
+        return frame.array();
+    }
+
+    /**
+     * Encodes a draw message as a frame
+     * @param draw The DrawInfo object containing the data about the drawing
+     * @return The encoded frame, including the length prefix
+     */
+    public static byte[] encodeDrawFrame(DrawInfo draw) {
+        ByteBuffer frame = ByteBuffer.allocate(5 + DRAW_PAYLOAD_SIZE);
+        frame.putInt(DRAW_PAYLOAD_SIZE + 1);
+        frame.put(DRAW_OPCODE);
+        encodeDraw(draw, frame);
+        return frame.array();
+    }
+
+    /**
+     * Writes the fixed width draw payload to the buffer
+     * @param draw The DrawInfo object containing the data about the drawing
+     * @param buffer The buffer to write to
+     */
+    public static void encodeDraw(DrawInfo draw, ByteBuffer buffer) {
+        int flags = 0;
+        if(draw.isPathStart()) {
+            flags |= FLAG_PATH_START;
+        }
+        if(draw.isClearCanvas()) {
+            flags |= FLAG_CLEAR_CANVAS;
+        }
+        if(draw.isOwnCanvas()) {
+            flags |= FLAG_OWN_CANVAS;
+        }
+
+        buffer.putFloat((float) draw.getX());
+        buffer.putFloat((float) draw.getY());
+        buffer.putInt(draw.getCanvasID());
+        buffer.putInt(encodeColor(draw.getColor()));
+        buffer.put((byte) flags);
+    }
+
+    /**
+     * Reads a fixed width draw payload
+     * @param payload The payload, positioned at the start of the draw data
+     * @return The decoded DrawInfo
+     */
+    public static DrawInfo decodeDraw(ByteBuffer payload) {
+        if(payload.remaining() < DRAW_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Draw frame too short");
+        }
+
+        double x = payload.getFloat();
+        double y = payload.getFloat();
+        int canvasID = payload.getInt();
+        Color color = decodeColor(payload.getInt());
+        int flags = payload.get();
+
+        return new DrawInfo(x, y, canvasID, color,
+                (flags & FLAG_PATH_START) != 0, (flags & FLAG_CLEAR_CANVAS) != 0, (flags & FLAG_OWN_CANVAS) != 0);
+    }
+
+    /**
+     * Rounds a coordinate of a stroke batch point the same way encodeStrokeBatch does
+     * @param coordinate The coordinate in pixels
+     * @return The coordinate the receiver of the batch decodes
+     */
+    public static double quantiseStrokeCoordinate(double coordinate) {
+        return (double) Math.round(coordinate * STROKE_QUANTISATION) / STROKE_QUANTISATION;
+    }
+
+    /**
+     * Encodes the payload of a stroke batch
+     * @param batch The stroke batch
+     * @return The payload, without the opcode
+     */
+    public static byte[] encodeStrokeBatch(StrokeBatch batch) {
+        // Each varint takes at most 5 bytes
+        ByteBuffer payload = ByteBuffer.allocate(5 + 5 + 1 + 5 + batch.getPointCount() * 15 + 4);
+        writeVarint(payload, batch.getCanvasID());
+        writeVarint(payload, batch.getColorIndex());
+        payload.put((byte) ((batch.isPathStart() ? FLAG_PATH_START : 0) | (batch.hasTimes() ? FLAG_TIMED : 0)));
+        writeVarint(payload, batch.getPointCount());
+
+        int lastX = 0;
+        int lastY = 0;
+        for(int i = 0; i < batch.getPointCount(); i++) {
+            int x = (int) Math.round(batch.getX(i) * STROKE_QUANTISATION);
+            int y = (int) Math.round(batch.getY(i) * STROKE_QUANTISATION);
+            writeVarint(payload, zigzag(x - lastX));
+            writeVarint(payload, zigzag(y - lastY));
+            lastX = x;
+            lastY = y;
+        }
+
+        if(batch.hasTimes() && batch.getPointCount() > 0) {
+            payload.putInt(batch.getTime(0));
+            for(int i = 1; i < batch.getPointCount(); i++) {
+                writeVarint(payload, Math.max(0, batch.getTime(i) - batch.getTime(i - 1)));
+            }
+        }
+
+        return Arrays.copyOf(payload.array(), payload.position());
+    }
+
+    /**
+     * Reads the payload of a stroke batch
+     * @param payload The payload, positioned at the start of the stroke batch data
+     * @return The decoded stroke batch
+     */
+    public static StrokeBatch decodeStrokeBatch(ByteBuffer payload) {
+        try {
+            int canvasID = readVarint(payload);
+            int colorIndex = readVarint(payload);
+            ColorPalette.checkIndex(colorIndex);
+            byte flags = payload.get();
+            boolean pathStart = (flags & FLAG_PATH_START) != 0;
+
+            int count = readVarint(payload);
+            // Every point takes at least 2 bytes
+            if(count < 0 || count > payload.remaining() / 2) {
+                throw new IllegalArgumentException("Invalid stroke batch point count: " + count);
+            }
+
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            int x = 0;
+            int y = 0;
+            for(int i = 0; i < count; i++) {
+                // A coordinate that overflows would wrap around to somewhere else
+                x = Math.addExact(x, unzigzag(readVarint(payload)));
+                y = Math.addExact(y, unzigzag(readVarint(payload)));
+                xs[i] = (double) x / STROKE_QUANTISATION;
+                ys[i] = (double) y / STROKE_QUANTISATION;
+            }
+
+            int[] times = null;
+            if((flags & FLAG_TIMED) != 0 && count > 0) {
+                times = new int[count];
+                times[0] = payload.getInt();
+                for(int i = 1; i < count; i++) {
+                    times[i] = times[i - 1] + readVarint(payload);
+                }
+            }
+
+            return new StrokeBatch(canvasID, colorIndex, pathStart, xs, ys, times);
+        }
+        catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Stroke batch too short");
+        }
+        catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Stroke batch coordinate out of range");
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteBuffer buffer, int value) {
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    /**
+     * Encodes a colour as 8 bit RGBA, the form colours take in every message. See ColorCache.toRGBA
+     * @param color The colour
+     * @return The encoded colour
+     */
+    public static int encodeColor(Color color) {
+        return ColorCache.toRGBA(color);
+    }
+
+    /**
+     * Converts a colour encoded as 8 bit RGBA (see encodeColor) back to a Color
+     * @param rgba The encoded colour
+     * @return The colour
+     */
+    public static Color decodeColor(int rgba) {
+        return ColorCache.get(rgba);
+    }
+
+    /**
+     * Converts a frame back to the equivalent text message (header + '-' + data)
+     * @param frame The frame without the length prefix, positioned at the opcode
+     * @return The text message
+     */
+    public static String decodeToText(ByteBuffer frame) {
+        byte opcode = frame.get();
+        if((opcode & REQUEST_ID_FLAG) != 0) {
+            int requestID = frame.getInt();
+            return NetworkMessage.addRequestID(requestID, decodeToText((byte) (opcode & ~REQUEST_ID_FLAG), frame));
+        }
+
+        return decodeToText(opcode, frame);
+    }
+
+    private static String decodeToText(byte opcode, ByteBuffer payload) {
+        if(opcode == DRAW_OPCODE) {
+            return NetworkMessage.generateDrawMessage(decodeDraw(payload));
+        }
+        if(opcode == STROKE_BATCH_OPCODE) {
+            return NetworkMessage.addStrokeBatchHeader(Base64.getEncoder().encodeToString(getPayload(payload)));
+        }
+
+        String data = new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), StandardCharsets.UTF_8);
+        return getHeader(opcode) + "-" + data;
+    }
+
+    /**
+     * Copies the remaining bytes of a frame
+     * @param frame The frame, positioned at the start of the payload
+     * @return The payload
+     */
+    public static byte[] getPayload(ByteBuffer frame) {
+        byte[] payload = new byte[frame.remaining()];
+        frame.get(payload);
+        return payload;
+    }
+
+    /**
+     * Checks the length prefix of a frame
+     * @param length The length read from the stream
+     */
+    public static void checkFrameLength(int length) throws IOException {
+        if(length < 1 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    /**
+     * Reads a single frame from the stream. This method blocks until the whole frame is received.
+     * @param input The stream to read from
+     * @return The frame without the length prefix, positioned at the opcode
+     */
+    public static ByteBuffer readFrame(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        checkFrameLength(length);
+
+        byte[] frame = new byte[length];
+        input.readFully(frame);
+        return ByteBuffer.wrap(frame);
+    }
+
+    /**
+     * Reads a single frame from the stream into a buffer that is reused for every frame.
+     * This method blocks until the whole frame is received.
+     * @param input The stream to read from
+     * @param buffer The buffer to read into. Must have an array of at least MAX_FRAME_SIZE bytes
+     * @return The buffer, holding the frame without the length prefix, positioned at the opcode. Its contents are
+     * only valid until the next frame is read into it
+     */
+    public static ByteBuffer readFrame(DataInputStream input, ByteBuffer buffer) throws IOException {
+        int length = input.readInt();
+        checkFrameLength(length);
+
+        buffer.clear();
+        input.readFully(buffer.array(), buffer.arrayOffset(), length);
+        buffer.limit(length);
+        return buffer;
+    }
+
+    /**
+     * Reads a single '\n' terminated line from the stream without reading any bytes past it, so that the stream can
+     * switch to frames afterwards.
+     * @param input The stream to read from
+     * @return The line without the line ending, or null if the stream ended
+     */
+    public static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        int b;
+        while((b = input.read()) != '\n') {
+            if(b == -1) {
+                return null;
+            }
+            if(line.size() == MAX_LINE_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            line.write(b);
+        }
+
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * Reads the points of draw and stroke batch payloads without creating any objects, so it can be used for every
+     * message received. A reader is reused for every payload: read one with readDraw or readStrokeBatch, then call
+     * next before each point.
+     * <p>
+     * A reader reads the payload in place, so the payload must not change until every point has been read.
+     * This class is not thread-safe.
+     */
+    public static class PointReader {
+        // Gives the colours of stroke batches, which only carry a palette index
+        private final ColorPalette palette;
+
+        private ByteBuffer payload;
+        // The position of the next coordinates and, for timed batches, of the next time
+        private int coordinatePosition;
+        private int timePosition;
+
+        private int canvasID;
+        private Color color;
+        private int flags;
+        private boolean strokeBatch;
+        private boolean timed;
+        private int count;
+
+        // The current point. index is -1 before next is called
+        private int index;
+        private int quantisedX;
+        private int quantisedY;
+        private double x;
+        private double y;
+        private int time;
+
+        /**
+         * @param palette The palette of the room the payloads are received from
+         */
+        public PointReader(ColorPalette palette) {
+            this.palette = palette;
+        }
+
+        /**
+         * Starts reading a draw payload, which holds a single point
+         * @param payload The payload, positioned after the opcode
+         */
+        public void readDraw(ByteBuffer payload) {
+            if(payload.remaining() < DRAW_PAYLOAD_SIZE) {
+                throw new IllegalArgumentException("Draw frame too short");
+            }
+
+            this.payload = payload;
+            x = payload.getFloat();
+            y = payload.getFloat();
+            canvasID = payload.getInt();
+            color = decodeColor(payload.getInt());
+            flags = payload.get();
+            strokeBatch = false;
+            timed = false;
+            count = 1;
+            index = -1;
+        }
+
+        /**
+         * Starts reading a stroke batch payload
+         * @param payload The payload, positioned after the opcode
+         */
+        public void readStrokeBatch(ByteBuffer payload) {
+            try {
+                this.payload = payload;
+                canvasID = readVarint(payload);
+                color = palette.get(readVarint(payload));
+                flags = payload.get();
+                strokeBatch = true;
+                timed = (flags & FLAG_TIMED) != 0;
+
+                count = readVarint(payload);
+                // Every point takes at least 2 bytes
+                if(count < 0 || count > payload.remaining() / 2) {
+                    throw new IllegalArgumentException("Invalid stroke batch point count: " + count);
+                }
+
+                coordinatePosition = payload.position();
+                if(timed && count > 0) {
+                    // The times follow the coordinates, so skip over them once to find where the times start
+                    for(int i = 0; i < count * 2; i++) {
+                        readVarint(payload);
+                    }
+                    timePosition = payload.position();
+                }
+            }
+            catch (BufferUnderflowException ex) {
+                throw new IllegalArgumentException("Stroke batch too short");
+            }
+
+            quantisedX = 0;
+            quantisedY = 0;
+            index = -1;
+        }
+
+        /**
+         * Moves to the next point
+         * @return False if every point has been read
+         */
+        public boolean next() {
+            if(index + 1 >= count) {
+                return false;
+            }
+            index++;
+
+            if(!strokeBatch) {
+                return true;
+            }
+
+            try {
+                payload.position(coordinatePosition);
+                quantisedX += unzigzag(readVarint(payload));
+                quantisedY += unzigzag(readVarint(payload));
+                coordinatePosition = payload.position();
+                x = (double) quantisedX / STROKE_QUANTISATION;
+                y = (double) quantisedY / STROKE_QUANTISATION;
+
+                if(timed) {
+                    payload.position(timePosition);
+                    time = index == 0 ? payload.getInt() : time + readVarint(payload);
+                    timePosition = payload.position();
+                }
+            }
+            catch (BufferUnderflowException ex) {
+                throw new IllegalArgumentException("Stroke batch too short");
+            }
+
+            return true;
+        }
+
+        public int getPointCount() {
+            return count;
+        }
+
+        /**
+         * @return The index of the current point in its payload
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public int getCanvasID() {
+            return canvasID;
+        }
+
+        public Color getColor() {
+            return color;
+        }
+
+        /**
+         * @return True if the current point starts a path. Only the first point of a stroke batch can
+         */
+        public boolean isPathStart() {
+            return (flags & FLAG_PATH_START) != 0 && index == 0;
+        }
+
+        public boolean isClearCanvas() {
+            return !strokeBatch && (flags & FLAG_CLEAR_CANVAS) != 0;
+        }
+
+        public boolean isOwnCanvas() {
+            return !strokeBatch && (flags & FLAG_OWN_CANVAS) != 0;
+        }
+
+        /**
+         * @return True if the points have the times they were drawn. See StrokeBatch.hasTimes
+         */
+        public boolean hasTimes() {
+            return timed;
+        }
+
+        /**
+         * @return The time the current point was drawn on the sender's clock. Only valid if hasTimes is true
+         */
+        public int getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package networking;
+
+import javafx.scene.paint.Color;
+
+/**
+ * The colours registered in a game room, as seen by a client.
+ * <p>
+ * The server gives every colour registered in a room a small palette index and tells every client in the room with
+ * a PALETTE message. Stroke batches, canvas own and results messages then carry the index instead of the colour.
+ * The server can give an index to another colour once nothing uses it any more. It sends the new colour before any
+ * message using the index, and every message is decoded as it arrives, so the palette always has the colour a
+ * message was sent with. See NetworkMessage.java for details
+ * <p>
+ * This class is not thread-safe. A client's palette is only used by its ClientNetworkThread.
+ */
+public class ColorPalette {
+    // The most colours a room can have. Every palette index is below this, so it takes at most 2 bytes as a varint
+    public static final int MAX_COLORS = 4096;
+    // Sent in place of a palette index when there is no colour, e.g. for the winner of a tied game
+    public static final int NO_COLOR = -1;
+
+    private final Color[] colors = new Color[MAX_COLORS];
+
+    /**
+     * Adds a colour announced by the server, replacing the colour that had the index before
+     * @param index The palette index
+     * @param color The colour
+     */
+    public void set(int index, Color color) {
+        checkIndex(index);
+        colors[index] = color;
+    }
+
+    /**
+     * @param index The palette index
+     * @return The colour with the index
+     */
+    public Color get(int index) {
+        checkIndex(index);
+
+        Color color = colors[index];
+        if(color == null) {
+            throw new IllegalArgumentException("Unknown palette index: " + index);
+        }
+        return color;
+    }
+
+    /**
+     * Checks a palette index received from the network
+     * @param index The palette index
+     */
+    public static void checkIndex(int index) {
+        if(index < 0 || index >= MAX_COLORS) {
+            throw new IllegalArgumentException("Invalid palette index: " + index);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package networking;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A received message of either protocol, split into its type, request ID and data.
+ * <p>
+ * Parsing only finds where each part is: nothing is copied out of the line or frame until a handler asks for the
+ * data. A Message is reused for every message received on a connection, so handlers must not keep it.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class Message {
+    private MessageType type;
+    private int requestID;
+
+    // Text messages: the whole line and the index where the data starts
+    private String line;
+    private int dataStart;
+
+    // Binary messages: the frame and the index where the payload starts. Null for text messages
+    private ByteBuffer frame;
+    private int payloadStart;
+
+    /**
+     * Reads a text message: [request ID + REQUEST_ID_SEPARATOR] + header + '-' + data
+     * @param line The message
+     * @return This message
+     */
+    public Message parseText(String line) {
+        int dataSeparator = line.indexOf('-');
+        if(dataSeparator == -1) {
+            throw new IllegalArgumentException("Message without a data section: " + line);
+        }
+
+        // A separator in the data section isn't part of a request ID
+        int headerStart = 0;
+        int idSeparator = line.indexOf(NetworkMessage.REQUEST_ID_SEPARATOR);
+        requestID = 0;
+        if(idSeparator != -1 && idSeparator < dataSeparator) {
+            requestID = Integer.parseInt(line, 0, idSeparator, 10);
+            headerStart = idSeparator + 1;
+        }
+
+        type = MessageType.fromHeader(line, headerStart, dataSeparator);
+        this.line = line;
+        dataStart = dataSeparator + 1;
+        frame = null;
+        return this;
+    }
+
+    /**
+     * Reads a binary frame. See BinaryProtocol.java for details
+     * @param frame The frame without its length prefix, positioned at the opcode
+     * @return This message
+     */
+    public Message parseFrame(ByteBuffer frame) {
+        byte opcode = frame.get();
+
+        requestID = 0;
+        if((opcode & BinaryProtocol.REQUEST_ID_FLAG) != 0) {
+            requestID = frame.getInt();
+            opcode &= ~BinaryProtocol.REQUEST_ID_FLAG;
+        }
+
+        type = MessageType.fromOpcode(opcode);
+        this.frame = frame;
+        payloadStart = frame.position();
+        line = null;
+        return this;
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    /**
+     * @return The request ID, or 0 if the message doesn't have one
+     */
+    public int getRequestID() {
+        return requestID;
+    }
+
+    /**
+     * @return True if the message was received as a binary frame
+     */
+    public boolean isBinary() {
+        return frame != null;
+    }
+
+    /**
+     * @return The data section of a text message, or the payload of a frame decoded as UTF-8
+     */
+    public String getData() {
+        if(frame == null) {
+            return line.substring(dataStart);
+        }
+
+        return new String(frame.array(), frame.arrayOffset() + payloadStart, frame.limit() - payloadStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The payload of a binary frame, positioned at its start
+     */
+    public ByteBuffer getPayload() {
+        if(frame == null) {
+            throw new IllegalStateException("Text messages don't have a binary payload");
+        }
+
+        return frame.position(payloadStart);
+    }
+}
@@ -0,0 +1,58 @@
+package networking;
+
+/**
+ * A dispatch table from message types to the functions handling them.
+ * <p>
+ * The table is built once, when the receiving side is created, and finding the handler of a message is a single
+ * array lookup by its type. A handler that throws only loses the message it was handling: the exception is reported
+ * and the connection keeps going.
+ * @param <C> The object the handlers work on, e.g. the session of the client that sent the message
+ */
+public class MessageHandlers<C> {
+
+    public interface Handler<C> {
+        void handle(C context, Message message);
+    }
+
+    private final Handler<C>[] handlers;
+
+    @SuppressWarnings("unchecked")
+    public MessageHandlers() {
+        handlers = (Handler<C>[]) new Handler<?>[MessageType.count()];
+    }
+
+    /**
+     * Sets the handler for a message type
+     * @param type The message type
+     * @param handler The handler
+     * @return This table, so registrations can be chained
+     */
+    public MessageHandlers<C> register(MessageType type, Handler<C> handler) {
+        handlers[type.ordinal()] = handler;
+        return this;
+    }
+
+    /**
+     * Passes a message to the handler of its type
+     * @param context The object the handlers work on
+     * @param message The message
+     * @return False if the message had no handler or its handler threw an exception
+     */
+    public boolean dispatch(C context, Message message) {
+        Handler<C> handler = handlers[message.getType().ordinal()];
+        if(handler == null) {
+            System.out.println("No handler for message: " + message.getType());
+            return false;
+        }
+
+        try {
+            handler.handle(context, message);
+            return true;
+        }
+        catch (RuntimeException ex) {
+            System.out.println("Exception handling " + message.getType() + " message: " + ex.getMessage());
+            ex.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package networking;
+
+/**
+ * The types of message sent between the clients and the server.
+ * <p>
+ * The ordinal of each type is its opcode in the binary protocol, so new types must only be added at the end.
+ * Each type has the header used for it in the text protocol. See NetworkMessage.java for the contents of each message.
+ */
+public enum MessageType {
+    DRAW(NetworkMessage.DRAW_MESSAGE_HEADER),
+    COLOR_REQUEST(NetworkMessage.COLOR_REQUEST_HEADER),
+    CANVAS_REQUEST(NetworkMessage.CANVAS_REQUEST_HEADER),
+    CANVAS_RELEASE(NetworkMessage.CANVAS_RELEASE_HEADER),
+    CANVAS_LOCK(NetworkMessage.CANVAS_LOCK),
+    CANVAS_CLEAR(NetworkMessage.CANVAS_CLEAR),
+    CANVAS_OWN(NetworkMessage.CANVAS_OWN),
+    SCORE_AND_RESULTS(NetworkMessage.CALCULATE_SCORE_AND_GET_RESULTS),
+    LOBBY_PLAYER_JOIN(NetworkMessage.LOBBY_PLAYER_JOIN_HEADER),
+    LOBBY_PLAYER_LEFT(NetworkMessage.LOBBY_PLAYER_LEFT_HEADER),
+    LOBBY_PLAYER_READY(NetworkMessage.LOBBY_PLAYER_READY_HEADER),
+    LOBBY_START_COUNTDOWN(NetworkMessage.LOBBY_START_COUNTDOWN_HEADER),
+    ROOM_JOIN(NetworkMessage.ROOM_JOIN_HEADER),
+    STROKE_BATCH(NetworkMessage.STROKE_BATCH_HEADER),
+    BOARD(NetworkMessage.BOARD_HEADER),
+    // Only sent as text, before the protocol is chosen
+    PROTOCOL(NetworkMessage.PROTOCOL_HEADER),
+    PALETTE(NetworkMessage.PALETTE_HEADER);
+
+    // values() copies the array every time it is called
+    private static final MessageType[] TYPES = values();
+
+    private final String header;
+
+    MessageType(String header) {
+        this.header = header;
+    }
+
+    /**
+     * @return The header used for this type in the text protocol
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @return The opcode used for this type in the binary protocol
+     */
+    public byte getOpcode() {
+        return (byte) ordinal();
+    }
+
+    /**
+     * @return The number of message types
+     */
+    public static int count() {
+        return TYPES.length;
+    }
+
+    /**
+     * Gets the type of a binary frame
+     * @param opcode The opcode without the REQUEST_ID_FLAG bit
+     * @return The type
+     */
+    public static MessageType fromOpcode(int opcode) {
+        if(opcode < 0 || opcode >= TYPES.length) {
+            throw new IllegalArgumentException("Invalid opcode: " + opcode);
+        }
+        return TYPES[opcode];
+    }
+
+    /**
+     * Gets the type of a text message from its header, without copying the header out of the message
+     * @param message The message
+     * @param start The index of the first character of the header
+     * @param end The index after the last character of the header
+     * @return The type
+     */
+    public static MessageType fromHeader(String message, int start, int end) {
+        int length = end - start;
+        for(MessageType type : TYPES) {
+            if(type.header.length() == length && message.startsWith(type.header, start)) {
+                return type;
+            }
+        }
+
+        throw new IllegalArgumentException("Invalid message header: " + message.substring(start, end));
+    }
+}
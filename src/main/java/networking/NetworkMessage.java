@@ -1,8 +1,11 @@
 package networking;
 
+import com.example.javafxtest.BoardGeometry;
 import com.example.javafxtest.DrawInfo;
 import com.example.javafxtest.LobbyPlayer;
-import javafx.scene.paint.Color;
+import com.example.javafxtest.StrokeBatch;
+
+import java.util.Base64;
 
 /**
  * A class containing static fields and methods related to sending messages over the network.
@@ -16,15 +19,25 @@ public class NetworkMessage {
      *          Use the DRAW_MESSAGE_HEADER + Gson serialization of a DrawInfo object
      *          The format is the same for messages to and from the server
      *
+     *      Stroke Batch Messages:
+     *          Use the STROKE_BATCH_HEADER + Base64 encoding of BinaryProtocol.encodeStrokeBatch
+     *          Carries a run of points of one stroke. The format is the same for messages to and from the server
+     *
      *      Colour Request Messages:
      *          Sending Request to Server:
-     *              Use the COLOR_REQUEST_HEADER + The string representation of the color has code.
-     *              Obtained by Integer.toString(color.HashCode())
+     *              Use the COLOR_REQUEST_HEADER + The string representation of the colour's 8 bit RGBA value.
+     *              Obtained by Integer.toString(BinaryProtocol.encodeColor(color))
      *
      *          Server Responses:
-     *              Use the same COLOR_REQUEST_HEADER + The .toString of a boolean obtained by Boolean.toString(value).
-     *              True indicates that the request was allowed and the sender now owns the color
-     *              False indicates that the colour was already in use by another client
+     *              Use the same COLOR_REQUEST_HEADER + The .toString of an int.
+     *              The palette index of the colour indicates that the request was allowed and the sender now owns the color
+     *              ColorPalette.NO_COLOR indicates that the colour was already in use by another client
+     *
+     *      Palette message:
+     *          Uses the PALETTE_HEADER + .toString of the palette index + '/' + .toString of the colour's 8 bit RGBA value.
+     *          This message is only ever sent from the server. It is sent to every client in the room when a colour is
+     *          registered, before the response to the request, and for every registered colour to a client joining the
+     *          room. An index that is no longer in use can be given to another colour, see ColorPalette.
      *
      *
      *      Canvas Request Messages:
@@ -42,33 +55,25 @@ public class NetworkMessage {
      *
      *
      *      Canvas Lock message:
-     *          Sending Request to Server:
-     *              Uses CANVAS_LOCK + .toString of an int indicating which canvas id to lock and sends it to the server
-     *
+     *          Uses CANVAS_LOCK + .toString of an int indicating which canvas id is locked.
+     *          Clients no longer send this message, the server locks a canvas itself when it is claimed.
      *
- *          Canvas Clear message:
-     *           Sending Request to Server:
-     *                 Uses CANVAS_CLEAR + .toString of an int indicating which canvas id to clear and
-     *                 sends it to the server
-     *
-     *            Server Responses:
-     *                 Uses CANVAS_CLEAR + .toString of an int indicating which canvas id to clear. Currently, it
-     *                 relays which canvas to clear to all clients.
+     *      Canvas Clear message:
+     *          Uses CANVAS_CLEAR + .toString of an int indicating which canvas id to clear.
+     *          This message is only ever sent from the server to all clients. It is sent when a client releases a canvas
+     *          that is not more than half covered by the strokes drawn on it.
      *
      *      Canvas Own Message:
-     *          Uses CANVAS_OWN + .toString of an int indicating which canvas id to colour in + color indicating the color
-     *          of the client who now owns the canvas.
-     *          This format is the same when sent to or from the server.
+     *          Uses CANVAS_OWN + .toString of an int indicating which canvas id to colour in + '/' + the palette index of
+     *          the color of the client who now owns the canvas.
+     *          This message is only ever sent from the server to all clients. The server keeps the area of each canvas
+     *          covered by the strokes it forwards and sends this message when a client releases a canvas that is more
+     *          than half covered. The client who owns the canvas scores 10 points.
      *
      *      Calculate Score and Results message:
-     *           Sending Request to Server:
-     *                 Uses SCORE_AND_RESULTS + .toString of an int indicating score of player + color indicating client Color
-     *                 and sends it to the server
-     *
-     *          Server Responses:
-     *                 Uses SCORE_AND_RESULTS + int score indicating the score of the winner or tie score and the color indicating
-     *                 which player won the game or transparent color if there is a tie +  and sends it to all
-     *                 clients.
+     *          Uses SCORE_AND_RESULTS + int score indicating the score of the winner or tie score + '/' + the palette index
+     *          of the color of the player who won the game or ColorPalette.NO_COLOR if there is a tie.
+     *          This message is only ever sent from the server to all clients, once every canvas is owned.
      *
      *      Lobby join message:
      *          Uses the LOBBY_PLAYER_JOIN_HEADER + The .toString of the joining player's color + '/' + A string representing the player's name
@@ -86,6 +91,35 @@ public class NetworkMessage {
      *          Uses the LOBBY_START_COUNTDOWN_HEADER and an empty data section.
      *          This message is only ever sent from the server to the clients. It indicates that all players are ready and the countdown timer should start
      *
+     *      Protocol message:
+     *          Sending Request to Server:
+     *              Uses the PROTOCOL_HEADER + the name of the protocol the client wants to use (BINARY_PROTOCOL or TEXT_PROTOCOL).
+     *              This must be the first message the client sends.
+     *
+     *          Server Responses:
+     *              Uses the PROTOCOL_HEADER + the name of the protocol that will be used from now on. This response is always text.
+     *              If it is BINARY_PROTOCOL then all following messages in both directions are BinaryProtocol frames.
+     *
+     *      Room join message:
+     *          Sending Request to Server:
+     *              Uses the ROOM_JOIN_HEADER + the name of the game room to join. The room is created if it doesn't exist.
+     *              This must be the first message the client sends. Clients that never send it are placed in the default room.
+     *
+     *          Server Responses:
+     *              Uses the ROOM_JOIN_HEADER + The .toString of a boolean obtained by Boolean.toString(value).
+     *              True indicates the client joined the room
+     *              False indicates the client was already in a room
+     *
+     *      Board message:
+     *          Uses the BOARD_HEADER + the .toString of a BoardGeometry: columns + 'x' + rows + '/' + canvas size in pixels.
+     *          This message is only ever sent from the server. It is sent to a client when it joins a room, before the
+     *          ROOM_JOIN response. Canvas IDs range from 0 to columns * rows - 1.
+     *
+     *      Request IDs:
+     *          Colour request, canvas request and room join messages can start with a request ID followed by
+     *          REQUEST_ID_SEPARATOR, e.g. "12@COLOR_REQUEST-255". The server starts its response with the same ID so
+     *          the client can match each response to its request while several requests are in flight.
+     *          Requests without an ID get responses without one.
      *
      *
      */
@@ -101,11 +135,55 @@ public class NetworkMessage {
     public static final String LOBBY_PLAYER_LEFT_HEADER = "LOBBY_PLAYER_LEFT";
     public static final String LOBBY_PLAYER_READY_HEADER = "LOBBY_PLAYER_READY";
     public static final String LOBBY_START_COUNTDOWN_HEADER = "LOBBY_START_COUNTDOWN";
+    public static final String ROOM_JOIN_HEADER = "ROOM_JOIN";
+    public static final String PROTOCOL_HEADER = "PROTOCOL";
+    public static final String STROKE_BATCH_HEADER = "STROKE_BATCH";
+    public static final String BOARD_HEADER = "BOARD";
+    public static final String PALETTE_HEADER = "PALETTE";
+
+    public static final String TEXT_PROTOCOL = "TEXT";
+    public static final String BINARY_PROTOCOL = "BINARY";
+
+    public static final char REQUEST_ID_SEPARATOR = '@';
+
+    public static String addRequestID(int requestID, String msg) {
+        return requestID + Character.toString(REQUEST_ID_SEPARATOR) + msg;
+    }
+
+    private static int getRequestIDSeparatorIndex(String msg) {
+        int separator = msg.indexOf(REQUEST_ID_SEPARATOR);
+        int dataStart = msg.indexOf('-');
+
+        // A separator in the data section isn't part of a request ID
+        return dataStart != -1 && separator > dataStart ? -1 : separator;
+    }
+
+    /**
+     * Gets the request ID at the start of a message
+     * @param msg The message
+     * @return The request ID, or 0 if the message doesn't have one
+     */
+    public static int getRequestID(String msg) {
+        int separator = getRequestIDSeparatorIndex(msg);
+        return separator == -1 ? 0 : Integer.parseInt(msg.substring(0, separator));
+    }
+
+    /**
+     * @param msg The message
+     * @return The message without its request ID. Messages without a request ID are returned as they are
+     */
+    public static String removeRequestID(String msg) {
+        return msg.substring(getRequestIDSeparatorIndex(msg) + 1);
+    }
 
     public static String addDrawMessageHeader(String msg) {
         return DRAW_MESSAGE_HEADER + "-" + msg;
     }
 
+    public static String addStrokeBatchHeader(String msg) {
+        return STROKE_BATCH_HEADER + "-" + msg;
+    }
+
     public static String addColorRequestHeader(String msg) {
         return COLOR_REQUEST_HEADER + "-" + msg;
     }
@@ -113,11 +191,8 @@ public class NetworkMessage {
     public static String addCanvasRequestHeader(String msg) {
         return CANVAS_REQUEST_HEADER + "-" + msg;
     }
-    public static String addCanvasLockRequestHeader(String msg) {
-        return CANVAS_LOCK + "-" + msg;
-    }
     public static String addCanvasClearRequestHeader(String msg) {return CANVAS_CLEAR + "-" + msg; }
-    public static String addCanvasOwnRequestHeader(String msg, Color ownedColor) {return CANVAS_OWN + "-" + msg + "/" + ownedColor; }
+    public static String addCanvasOwnRequestHeader(String msg, int ownedColorIndex) {return CANVAS_OWN + "-" + msg + "/" + ownedColorIndex; }
 
     public static String addLobbyPlayerJoinHeader(String msg) {
         return LOBBY_PLAYER_JOIN_HEADER + "-" + msg;
@@ -131,6 +206,59 @@ public class NetworkMessage {
         return LOBBY_PLAYER_LEFT_HEADER + "-" + msg;
     }
 
+    public static String addRoomJoinHeader(String msg) {
+        return ROOM_JOIN_HEADER + "-" + msg;
+    }
+
+    public static String addBoardHeader(String msg) {
+        return BOARD_HEADER + "-" + msg;
+    }
+
+    public static String addProtocolHeader(String msg) {
+        return PROTOCOL_HEADER + "-" + msg;
+    }
+
+    public static String addPaletteHeader(String msg) {
+        return PALETTE_HEADER + "-" + msg;
+    }
+
+    /**
+     * Generates a message asking the server to switch to the given wire protocol
+     * @param protocol TEXT_PROTOCOL or BINARY_PROTOCOL
+     * @return The string encoding of the message
+     */
+    public static String generateProtocolMessage(String protocol) {
+        return addProtocolHeader(protocol);
+    }
+
+    /**
+     * Generates a message asking the server to join a game room
+     * @param roomName The name of the room
+     * @return The string encoding of the message
+     */
+    public static String generateRoomJoinMessage(String roomName) {
+        return addRoomJoinHeader(roomName);
+    }
+
+    /**
+     * Generates a message telling a client the geometry of the board in its room
+     * @param board The geometry of the board
+     * @return The string encoding of the message
+     */
+    public static String generateBoardMessage(BoardGeometry board) {
+        return addBoardHeader(board.toString());
+    }
+
+    /**
+     * Generates a message telling a client the palette index of a colour registered in its room
+     * @param colorIndex The palette index
+     * @param rgba The 8 bit RGBA value of the colour, see BinaryProtocol.encodeColor
+     * @return The string encoding of the message
+     */
+    public static String generatePaletteMessage(int colorIndex, int rgba) {
+        return addPaletteHeader(colorIndex + "/" + rgba);
+    }
+
     /**
      * Generates a message indicating that a player has joined the lobby
      * @param player The player who joined the lobby
@@ -168,10 +296,12 @@ public class NetworkMessage {
     }
 
     /**
-     * Generates a message indicating to the server the score of the client and client's color
+     * Generates a message containing the end results of the game
+     * @param msg The score of the winner, or the tied score
+     * @param clientColourIndex The palette index of the colour of the winner, or ColorPalette.NO_COLOR if there is a tie
      * @return The end results of the game
      */
-    public static String generateScoresAndGameResults (String msg, Color clientColour){return CALCULATE_SCORE_AND_GET_RESULTS + "-" + msg + "/" + clientColour; }
+    public static String generateScoresAndGameResults (String msg, int clientColourIndex){return CALCULATE_SCORE_AND_GET_RESULTS + "-" + msg + "/" + clientColourIndex; }
 
     /**
      * Generates a message indicating to the server to release the currently owned canvas
@@ -190,5 +320,14 @@ public class NetworkMessage {
         return addDrawMessageHeader(drawing.toJson());
     }
 
+    /**
+     * Generates a stroke batch message that can be sent through the server
+     * @param batch The points of the stroke
+     * @return The message that should be sent through the server
+     */
+    public static String generateStrokeBatchMessage(StrokeBatch batch) {
+        return addStrokeBatchHeader(Base64.getEncoder().encodeToString(BinaryProtocol.encodeStrokeBatch(batch)));
+    }
+
 
 }
@@ -0,0 +1,148 @@
+package networking;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a connection writes to its socket. Used by the NetworkClient and by the server's writer for every client.
+ * <p>
+ * Messages are queued and written to a buffered stream, so the flush policy decides how many messages go out with
+ * each write to the socket: fewer writes mean fewer system calls and TCP segments, but messages wait longer.
+ * The socket options are applied to every socket before it is used. The receive buffer size decides the TCP window
+ * offered while connecting, so it is set before connecting: on the client's socket, and on the server socket, whose
+ * accepted sockets inherit it.
+ */
+public class SocketTuning {
+
+    /**
+     * When the queued messages are flushed to the socket
+     */
+    public enum FlushPolicy {
+        // After every message. One write per message
+        MESSAGE,
+        // Once every queued message has been written. A burst of messages goes out with one write
+        BATCH,
+        // Like BATCH, but at most once per flush window. A message waits up to the window for others to join it
+        WINDOW
+    }
+
+    private FlushPolicy flushPolicy = FlushPolicy.BATCH;
+    private long flushWindowMs = 5;
+    // Messages are already batched before they are written, so Nagle's algorithm would only delay them further
+    private boolean tcpNoDelay = true;
+    // 0 keeps the operating system's default
+    private int sendBufferSize = 0;
+    private int receiveBufferSize = 0;
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    public long getFlushWindowMs() {
+        return flushWindowMs;
+    }
+
+    public void setFlushWindowMs(long flushWindowMs) {
+        if(flushWindowMs < 0) {
+            throw new IllegalArgumentException("The flush window can't be negative");
+        }
+
+        this.flushWindowMs = flushWindowMs;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        if(sendBufferSize < 0) {
+            throw new IllegalArgumentException("The send buffer size can't be negative");
+        }
+
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        if(receiveBufferSize < 0) {
+            throw new IllegalArgumentException("The receive buffer size can't be negative");
+        }
+
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Sets the socket options that can still change once a socket is connected: TCP_NODELAY and the send buffer size.
+     * Used on the sockets accepted by a server socket, which already have the receive buffer size of the server socket
+     * @param socket The socket
+     */
+    public void apply(Socket socket) throws SocketException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        if(sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+    }
+
+    /**
+     * Sets every socket option of a socket, including the receive buffer size. Must be called before the socket
+     * connects
+     * @param socket The socket
+     */
+    public void applyBeforeConnect(Socket socket) throws SocketException {
+        apply(socket);
+        if(receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+    }
+
+    /**
+     * Sets the receive buffer size of a server socket, which the sockets it accepts start with.
+     * Must be called before the server socket is bound
+     * @param serverSocket The server socket
+     */
+    public void apply(ServerSocket serverSocket) throws SocketException {
+        if(receiveBufferSize > 0) {
+            serverSocket.setReceiveBufferSize(receiveBufferSize);
+        }
+    }
+
+    /**
+     * Decides whether the messages written since the last flush should be flushed
+     * @param queueEmpty True if no more messages are waiting to be written
+     * @param unflushedSince The System.nanoTime the first message since the last flush was written
+     * @param now The current System.nanoTime
+     * @return 0 to flush now, the number of nanoseconds to wait for more messages before flushing, or -1 to write the
+     * next queued message first
+     */
+    public long getFlushDelayNanos(boolean queueEmpty, long unflushedSince, long now) {
+        switch(flushPolicy) {
+            case MESSAGE:
+                return 0;
+            case WINDOW:
+                long remaining = unflushedSince + TimeUnit.MILLISECONDS.toNanos(flushWindowMs) - now;
+                if(remaining <= 0) {
+                    return 0;
+                }
+                return queueEmpty ? remaining : -1;
+            default:
+                return queueEmpty ? 0 : -1;
+        }
+    }
+}
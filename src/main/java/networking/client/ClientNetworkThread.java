@@ -1,28 +1,39 @@
 package networking.client;
 
+import com.example.javafxtest.DrawInfo;
+import com.example.javafxtest.StrokeBatch;
+import networking.BinaryProtocol;
+
 import java.io.IOException;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class ClientNetworkThread extends Thread {
 	
-	private final BufferedReader input;
+	private final InputStream input;
+	private final boolean binary;
 	private final List<NetworkObserver> observers;
 	
-	public ClientNetworkThread(BufferedReader input, List<NetworkObserver> observers) {
+	/**
+	 * @param input The stream of messages from the server
+	 * @param binary True if the server sends BinaryProtocol frames, false if it sends lines of text
+	 * @param observers The observers that are notified of every message
+	 */
+	public ClientNetworkThread(InputStream input, boolean binary, List<NetworkObserver> observers) {
 		this.input = input;
+		this.binary = binary;
 		this.observers = observers;
 	}
 	
 	public void run() {
-		String msg;
-		
 		try {
-			while(true) {
-				msg = input.readLine();
-				for(NetworkObserver obs : observers) {
-					obs.messageReceived(msg);
-				}
+			if(binary) {
+				readFrames();
+			}
+			else {
+				readLines();
 			}
 		}
 		catch (IOException ex) {
@@ -30,5 +41,69 @@ public class ClientNetworkThread extends Thread {
 		}
 
 	}
+
+	private void readLines() throws IOException {
+		BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		String msg;
+
+		// readLine returns null once the server closes the connection
+		while((msg = lines.readLine()) != null) {
+			for(NetworkObserver obs : observers) {
+				obs.messageReceived(msg);
+			}
+		}
+	}
+
+	private void readFrames() throws IOException {
+		DataInputStream frames = new DataInputStream(input);
+		// Every frame is read into the same buffer
+		ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.MAX_FRAME_SIZE);
+
+		while(true) {
+			ByteBuffer frame = BinaryProtocol.readFrame(frames, buffer);
+
+			// Drawings are the bulk of the traffic so they are handed over without converting them to text
+			byte opcode = frame.get(0);
+			if(opcode == BinaryProtocol.DRAW_OPCODE || opcode == BinaryProtocol.STROKE_BATCH_OPCODE) {
+				notifyDrawFrame(opcode, frame);
+				continue;
+			}
+
+			String msg = BinaryProtocol.decodeToText(frame);
+			for(NetworkObserver obs : observers) {
+				obs.messageReceived(msg);
+			}
+		}
+	}
+
+	/**
+	 * Passes a draw or stroke batch frame to every observer. The frame is only decoded for the observers that don't
+	 * read it themselves
+	 */
+	private void notifyDrawFrame(byte opcode, ByteBuffer frame) {
+		DrawInfo draw = null;
+		StrokeBatch batch = null;
+
+		for(NetworkObserver obs : observers) {
+			frame.position(1);
+			if(obs.drawFrameReceived(opcode, frame)) {
+				continue;
+			}
+
+			frame.position(1);
+			if(opcode == BinaryProtocol.DRAW_OPCODE) {
+				if(draw == null) {
+					draw = BinaryProtocol.decodeDraw(frame);
+				}
+				obs.drawReceived(draw);
+			}
+			else {
+				if(batch == null) {
+					batch = BinaryProtocol.decodeStrokeBatch(frame);
+				}
+				obs.strokeBatchReceived(batch);
+			}
+		}
+	}
 	
 }
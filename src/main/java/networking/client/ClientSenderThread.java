@@ -0,0 +1,104 @@
+package networking.client;
+
+import networking.SocketTuning;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the messages sent by the client to the server, so the threads sending them never wait for the socket.
+ * <p>
+ * Messages are added to a lock-free queue and written in the order they were added. When the written messages are
+ * flushed depends on the flush policy: by default the thread writes everything that is queued before flushing, so a
+ * burst of messages goes out in as few packets as possible.
+ */
+public class ClientSenderThread extends Thread {
+
+	private final OutputStream output;
+	private final SocketTuning tuning;
+	private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+	// The number of messages in the queue. ConcurrentLinkedQueue.size has to walk the whole queue
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	// Set once writing fails. Messages sent after that are dropped
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param output The stream of messages to the server. Should be buffered, it is only flushed as the flush policy says
+	 * @param tuning The flush policy
+	 */
+	public ClientSenderThread(OutputStream output, SocketTuning tuning) {
+		this.output = output;
+		this.tuning = tuning;
+	}
+
+	/**
+	 * Queues a message to be written to the server. Never blocks.
+	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
+	 * @param message The encoded message
+	 */
+	public void send(byte[] message) {
+		if(stopped) {
+			return;
+		}
+
+		queue.add(message);
+		queueDepth.incrementAndGet();
+		LockSupport.unpark(this);
+	}
+
+	/**
+	 * @return The number of messages waiting to be written
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	public void run() {
+		// The System.nanoTime the first message since the last flush was written, or -1 if everything is flushed
+		long unflushedSince = -1;
+
+		try {
+			// It is very intentional to not leave this while loop unless an exception occurs.
+			//noinspection InfiniteLoopStatement
+			while(true) {
+				if(unflushedSince != -1) {
+					long delay = tuning.getFlushDelayNanos(queue.isEmpty(), unflushedSince, System.nanoTime());
+					// Wait for more messages to join the flush. Sending a message wakes the thread up early
+					if(delay > 0) {
+						LockSupport.parkNanos(this, delay);
+						continue;
+					}
+					if(delay == 0) {
+						output.flush();
+						unflushedSince = -1;
+					}
+				}
+
+				byte[] message = queue.poll();
+				if(message == null) {
+					// Everything has been flushed
+					while(queue.isEmpty()) {
+						LockSupport.park(this);
+					}
+					continue;
+				}
+
+				queueDepth.decrementAndGet();
+				output.write(message);
+				if(unflushedSince == -1) {
+					unflushedSince = System.nanoTime();
+				}
+			}
+		}
+		catch (IOException ex) {
+			stopped = true;
+			queue.clear();
+			queueDepth.set(0);
+			ex.printStackTrace();
+		}
+	}
+}
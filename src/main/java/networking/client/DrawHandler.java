@@ -0,0 +1,11 @@
+package networking.client;
+
+/**
+ * Receives the drawings from the server on the game's thread. See NetworkClient.InputHandler.handleInputs
+ */
+public interface DrawHandler {
+    /**
+     * @param draw The drawing. It is reused once this method returns, so it must not be kept
+     */
+    void handleDraw(DrawRecord draw);
+}
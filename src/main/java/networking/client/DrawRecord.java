@@ -0,0 +1,105 @@
+package networking.client;
+
+import javafx.scene.paint.Color;
+
+/**
+ * A drawing received from the server, passed from the network thread to the game.
+ * <p>
+ * Records are reused: the slots of a DrawRing and the records handed out by the jitter buffer are overwritten with
+ * the next drawing once the game is done with them. A record must not be kept after DrawHandler.handleDraw returns.
+ * The getters match the ones of DrawInfo.
+ */
+public class DrawRecord {
+    private double x;
+    private double y;
+    private int canvasID;
+    private Color color;
+    private boolean pathStart;
+    private boolean clearCanvas;
+    private boolean ownCanvas;
+
+    // Only used between the network thread and the jitter buffer. See StrokeBatch and JitterBuffer
+    // True if the point has a time from the sender's clock
+    boolean timed;
+    // The sender's time of the point
+    int time;
+    // True for the first point of a stroke batch, which the jitter buffer measures the network delay with
+    boolean batchStart;
+    // The time the batch was received, from NetworkClient.getStrokeTime
+    int arrivalTime;
+
+    void set(double x, double y, int canvasID, Color color, boolean pathStart, boolean clearCanvas, boolean ownCanvas) {
+        this.x = x;
+        this.y = y;
+        this.canvasID = canvasID;
+        this.color = color;
+        this.pathStart = pathStart;
+        this.clearCanvas = clearCanvas;
+        this.ownCanvas = ownCanvas;
+        timed = false;
+        batchStart = false;
+    }
+
+    /**
+     * Copies every field of another record, including the ones only used by the jitter buffer
+     */
+    void copyFrom(DrawRecord other) {
+        set(other.x, other.y, other.canvasID, other.color, other.pathStart, other.clearCanvas, other.ownCanvas);
+        timed = other.timed;
+        time = other.time;
+        batchStart = other.batchStart;
+        arrivalTime = other.arrivalTime;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public int getCanvasID() {
+        return canvasID;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public boolean isPathStart() {
+        return pathStart;
+    }
+
+    public boolean isClearCanvas() {
+        return clearCanvas;
+    }
+
+    public boolean isOwnCanvas() {
+        return ownCanvas;
+    }
+
+    /**
+     * @return True if the record is a point in the middle of a stroke, which can be left out since the line to the
+     * next point of the stroke covers it
+     */
+    boolean isCollapsible() {
+        return !pathStart && !clearCanvas && !ownCanvas;
+    }
+
+    /**
+     * @return True if the record clears or fills the canvas of other, so other no longer needs to be drawn
+     */
+    boolean replaces(DrawRecord other) {
+        return (clearCanvas || ownCanvas) && canvasID == other.canvasID;
+    }
+
+    /**
+     * @return True if the record is a point continuing the stroke of the same colour on the same canvas as other,
+     * with or without a time the same as other
+     */
+    boolean continues(DrawRecord other) {
+        return !pathStart && !clearCanvas && !ownCanvas && !other.clearCanvas && !other.ownCanvas
+                && timed == other.timed && canvasID == other.canvasID && color.equals(other.color);
+    }
+}
@@ -0,0 +1,183 @@
+package networking.client;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded single-producer single-consumer queue of drawings, from the network thread to the game's thread.
+ * <p>
+ * The slots are DrawRecords allocated once and overwritten in place, so queueing a drawing allocates nothing. The
+ * producer fills the record given by claim and publishes it, which copies it into the next slot. The consumer reads
+ * every published slot in a batch and frees them all with a single write. Each side only writes its own counter, so
+ * no locks are needed.
+ * <p>
+ * The producer never waits, since the network thread also reads the responses and other messages. When the game
+ * falls behind, the overload policy is applied as drawings are published:
+ * <ul>
+ *     <li>Once only the reserved slots are free, points in the middle of a stroke are collapsed: the latest point of
+ *     the stroke is held back and replaced by the next one, and the line to it covers the points left out. The held
+ *     point is published before the next drawing that doesn't continue the stroke.</li>
+ *     <li>The reserved slots are only used by the drawings that can't be collapsed: path starts, clears, claims and
+ *     the held points.</li>
+ *     <li>If the ring is full, those drawings are copied to an overflow queue instead, which the consumer reads once
+ *     the ring is empty. While it isn't empty every point in the middle of a stroke is dropped, and a clear or claim
+ *     replaces everything waiting in it for the same canvas, so it stays as small as the number of canvases.</li>
+ * </ul>
+ */
+class DrawRing {
+    private final DrawRecord[] slots;
+    private final int mask;
+    // The number of slots only used by drawings that can't be collapsed
+    private final int reserved;
+
+    // The number of slots ever published. Written by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // The number of slots ever freed. Written by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    // The producer's own copy of tail, and the last value of head it read
+    private long producerTail = 0;
+    private long cachedHead = 0;
+    // The consumer's own copy of head
+    private long consumerHead = 0;
+
+    // The record the producer fills before publishing it. Producer only
+    private final DrawRecord staged = new DrawRecord();
+    // The latest point of the stroke being collapsed. Producer only
+    private final DrawRecord held = new DrawRecord();
+    private boolean holding = false;
+
+    // The drawings that can't be collapsed and didn't fit in the ring. Empty unless the ring has been full
+    private final ConcurrentLinkedQueue<DrawRecord> overflow = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param capacity The number of slots. Must be a power of 2
+     */
+    DrawRing(int capacity) {
+        if(capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of 2: " + capacity);
+        }
+
+        slots = new DrawRecord[capacity];
+        for(int i = 0; i < capacity; i++) {
+            slots[i] = new DrawRecord();
+        }
+        mask = capacity - 1;
+        reserved = capacity / 4;
+    }
+
+    int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Gets the record to fill with the next drawing. Producer only
+     * @return The record. It is only seen by the consumer once publish is called
+     */
+    DrawRecord claim() {
+        return staged;
+    }
+
+    /**
+     * Queues the drawing in the last claimed record, applying the overload policy. Never waits. Producer only
+     */
+    void publish() {
+        if(holding) {
+            if(staged.continues(held) && freeSlots() <= reserved) {
+                held.copyFrom(staged);
+                return;
+            }
+
+            holding = false;
+            if(!staged.replaces(held)) {
+                enqueue(held, true);
+            }
+        }
+
+        if(staged.isCollapsible() && freeSlots() <= reserved) {
+            held.copyFrom(staged);
+            holding = true;
+            return;
+        }
+
+        enqueue(staged, !staged.isCollapsible());
+    }
+
+    /**
+     * Copies a drawing into the next slot, or into the overflow if it can't be collapsed and the ring is full
+     * @param useReserved True if the drawing can use the reserved slots
+     */
+    private void enqueue(DrawRecord record, boolean useReserved) {
+        // Nothing can overtake the drawings in the overflow
+        if(overflow.isEmpty()) {
+            int free = freeSlots();
+            if(free > reserved || (useReserved && free > 0)) {
+                slots[(int) producerTail & mask].copyFrom(record);
+                producerTail++;
+                tail.lazySet(producerTail);
+                return;
+            }
+        }
+
+        if(record.isCollapsible()) {
+            return;
+        }
+
+        if(!record.isPathStart()) {
+            // The canvas is cleared or filled, so nothing waiting for it has to be drawn
+            int canvasID = record.getCanvasID();
+            overflow.removeIf(waiting -> waiting.getCanvasID() == canvasID);
+        }
+        DrawRecord copy = new DrawRecord();
+        copy.copyFrom(record);
+        overflow.add(copy);
+    }
+
+    private int freeSlots() {
+        int free = slots.length - (int) (producerTail - cachedHead);
+        if(free <= reserved) {
+            cachedHead = head.get();
+            free = slots.length - (int) (producerTail - cachedHead);
+        }
+
+        return free;
+    }
+
+    /**
+     * @return The number of published slots that haven't been freed. Consumer only
+     */
+    int available() {
+        return (int) (tail.get() - consumerHead);
+    }
+
+    /**
+     * Gets a published slot. Consumer only
+     * @param index The index of the slot from the oldest one not freed. Must be less than available()
+     */
+    DrawRecord get(int index) {
+        return slots[(int) (consumerHead + index) & mask];
+    }
+
+    /**
+     * Frees the oldest slots so the producer can reuse them. Consumer only
+     * @param count The number of slots read
+     */
+    void free(int count) {
+        consumerHead += count;
+        head.lazySet(consumerHead);
+    }
+
+    /**
+     * Removes the oldest drawing from the overflow. The drawings in it come after the drawings published to the ring
+     * before them, so it is only removed once those have been freed. Consumer only
+     * @return The drawing, or null if the overflow is empty or drawings in the ring come first
+     */
+    DrawRecord pollOverflow() {
+        // The ring is checked after finding a drawing in the overflow, so every drawing published before it is seen
+        if(overflow.peek() == null || available() != 0) {
+            return null;
+        }
+
+        return overflow.poll();
+    }
+}
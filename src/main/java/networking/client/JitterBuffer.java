@@ -0,0 +1,281 @@
+package networking.client;
+
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds back the strokes drawn by other players so they can be drawn at the pace they were drawn.
+ * <p>
+ * Stroke batches arrive in bursts: the sender collects points before sending them and the network adds a varying
+ * delay. Drawing the points as soon as they arrive makes remote strokes jump forward in steps. Instead every point
+ * is drawn at the time the sender drew it plus a playout delay, and the stroke grows smoothly towards the next point
+ * that isn't due yet.
+ * <p>
+ * The points drawn on each canvas form a stream with its own playout delay. Only one player draws on a canvas at a
+ * time, so a stream follows a single sender until another player draws on the canvas. The delay follows the average
+ * lateness of the sender's batches plus a few times its deviation, the same way TCP estimates its retransmission
+ * timeout, so a steady connection gets a short delay and a jittery one a longer delay.
+ * <p>
+ * Each stream buffers its points in a ring of records that are reused, so buffering and releasing points allocates
+ * nothing once the rings are large enough.
+ * <p>
+ * All times are in milliseconds. Arrival times come from NetworkClient.getStrokeTime, point times from the sender's
+ * clock, so only differences between times of the same clock are used.
+ * <p>
+ * This class is not thread-safe. It is only used by the game's thread.
+ */
+class JitterBuffer {
+    private static final int MIN_DELAY = 20;
+    private static final int MAX_DELAY = 300;
+    // The lateness assumed for a new sender: about the time a point waits in the sender before its batch is sent
+    private static final int INITIAL_LATENESS = 50;
+    // A change in transit time larger than this means the sender's clock jumped, so its stream starts over
+    private static final int RESET_THRESHOLD = 10000;
+    // The number of points a stream can buffer before its ring grows
+    private static final int INITIAL_STREAM_CAPACITY = 256;
+
+    // The streams by canvasID, created the first time a timed point is drawn on the canvas.
+    // Only one player draws on a canvas at a time, so each stream has a single sender at a time
+    private Stream[] streams = new Stream[64];
+    // The streams with buffered points or a stroke to extend
+    private final List<Stream> activeStreams = new ArrayList<>();
+
+    // The record passed to the handler for every point released
+    private final DrawRecord output = new DrawRecord();
+
+    private static class Stream {
+        // A ring of points reused for every point buffered, oldest first
+        private BufferedPoint[] points = newPoints(INITIAL_STREAM_CAPACITY);
+        private int first = 0;
+        private int size = 0;
+        private boolean active = false;
+
+        // The colour of the sender drawing on the canvas. Null until the first point
+        private Color sender = null;
+        // The smallest transit time seen: the arrival time minus the sender time of the batch's first point
+        private int baseTransit;
+        private double meanLateness;
+        private double latenessDeviation;
+        // Added to the sender time of a point to get its playout time
+        private int playoutOffset;
+
+        // The last point released, so the stroke can be extended towards the next point
+        private final BufferedPoint lastPoint = new BufferedPoint();
+        private boolean hasLastPoint = false;
+
+        /**
+         * Starts measuring the delay of a new sender, or of a sender whose clock jumped
+         */
+        private void reset(Color sender, int transit) {
+            this.sender = sender;
+            baseTransit = transit;
+            meanLateness = INITIAL_LATENESS;
+            latenessDeviation = 0;
+            playoutOffset = transit + getDelay();
+        }
+
+        private int getDelay() {
+            return (int) Math.max(MIN_DELAY, Math.min(MAX_DELAY, meanLateness + 3 * latenessDeviation));
+        }
+
+        private BufferedPoint peek() {
+            return size == 0 ? null : points[first];
+        }
+
+        /**
+         * @return The record to fill with a new point at the end of the ring. The ring grows if it is full
+         */
+        private BufferedPoint add() {
+            if(size == points.length) {
+                BufferedPoint[] grown = newPoints(points.length * 2);
+                for(int i = 0; i < size; i++) {
+                    grown[i] = points[(first + i) % points.length];
+                }
+                points = grown;
+                first = 0;
+            }
+
+            return points[(first + size++) % points.length];
+        }
+
+        /**
+         * Removes the oldest point. It can be read until the next call to add
+         */
+        private BufferedPoint poll() {
+            BufferedPoint point = points[first];
+            first = (first + 1) % points.length;
+            size--;
+            return point;
+        }
+
+        private static BufferedPoint[] newPoints(int capacity) {
+            BufferedPoint[] points = new BufferedPoint[capacity];
+            for(int i = 0; i < capacity; i++) {
+                points[i] = new BufferedPoint();
+            }
+            return points;
+        }
+    }
+
+    /**
+     * A buffered point. The records are reused for every point that passes through a stream
+     */
+    private static class BufferedPoint {
+        private double x;
+        private double y;
+        private int canvasID;
+        private Color color;
+        private boolean pathStart;
+        // The time the point should be drawn at, in the receiver's clock
+        private int playoutTime;
+
+        private void set(double x, double y, int canvasID, Color color, boolean pathStart, int playoutTime) {
+            this.x = x;
+            this.y = y;
+            this.canvasID = canvasID;
+            this.color = color;
+            this.pathStart = pathStart;
+            this.playoutTime = playoutTime;
+        }
+    }
+
+    private Stream getStream(int canvasID) {
+        if(canvasID >= streams.length) {
+            streams = Arrays.copyOf(streams, Math.max(canvasID + 1, streams.length * 2));
+        }
+        if(streams[canvasID] == null) {
+            streams[canvasID] = new Stream();
+        }
+
+        return streams[canvasID];
+    }
+
+    /**
+     * Buffers a point of a timed stroke batch
+     * @param point The point received from the server. It must have a time
+     */
+    void add(DrawRecord point) {
+        Stream stream = getStream(point.getCanvasID());
+
+        boolean newSender = !point.getColor().equals(stream.sender);
+        if(point.batchStart || newSender) {
+            int transit = point.arrivalTime - point.time;
+            if(newSender) {
+                // A new player draws on the canvas, so the last stroke isn't extended
+                stream.hasLastPoint = false;
+                stream.reset(point.getColor(), transit);
+            }
+            else if(Math.abs(transit - stream.baseTransit) > RESET_THRESHOLD) {
+                stream.reset(point.getColor(), transit);
+            }
+
+            // The lateness of a batch is how much longer it took than the fastest batch so far
+            stream.baseTransit = Math.min(stream.baseTransit, transit);
+            int lateness = transit - stream.baseTransit;
+            stream.meanLateness += (lateness - stream.meanLateness) / 16;
+            stream.latenessDeviation += (Math.abs(lateness - stream.meanLateness) - stream.latenessDeviation) / 16;
+            stream.playoutOffset = stream.baseTransit + stream.getDelay();
+        }
+
+        stream.add().set(point.getX(), point.getY(), point.getCanvasID(), point.getColor(),
+                point.isPathStart(), point.time + stream.playoutOffset);
+        if(!stream.active) {
+            stream.active = true;
+            activeStreams.add(stream);
+        }
+    }
+
+    /**
+     * Draws the points that are due, and a point part of the way to the next point of every stroke
+     * @param now The current time
+     * @param handler Draws the points
+     */
+    void release(int now, DrawHandler handler) {
+        for(int i = activeStreams.size() - 1; i >= 0; i--) {
+            Stream stream = activeStreams.get(i);
+            while(stream.size > 0 && stream.peek().playoutTime - now <= 0) {
+                releasePoint(stream, stream.poll(), handler);
+            }
+
+            // Nothing is left to draw until the next point is added
+            if(stream.size == 0) {
+                deactivate(i);
+                continue;
+            }
+
+            // Extend the stroke towards the next point so it grows every frame instead of once per point
+            BufferedPoint next = stream.peek();
+            BufferedPoint last = stream.lastPoint;
+            if(!stream.hasLastPoint || next.pathStart || next.canvasID != last.canvasID) {
+                continue;
+            }
+
+            int span = next.playoutTime - last.playoutTime;
+            if(span <= 0 || now - last.playoutTime <= 0) {
+                continue;
+            }
+
+            double fraction = (double) (now - last.playoutTime) / span;
+            last.set(last.x + (next.x - last.x) * fraction, last.y + (next.y - last.y) * fraction,
+                    last.canvasID, last.color, false, now);
+            draw(last, handler);
+        }
+    }
+
+    /**
+     * Draws every point of the sender drawing on a canvas.
+     * Used before a message that changes the whole canvas, so the strokes are drawn before it
+     * @param canvasID The ID of the canvas
+     * @param handler Draws the points
+     */
+    void flushCanvas(int canvasID, DrawHandler handler) {
+        if(canvasID < streams.length && streams[canvasID] != null) {
+            flush(streams[canvasID], handler);
+        }
+    }
+
+    /**
+     * Draws every point of a sender.
+     * Used before a drawing without a time, so the sender's drawings stay in order
+     * @param sender The colour of the sender
+     * @param handler Draws the points
+     */
+    void flushSender(Color sender, DrawHandler handler) {
+        for(Stream stream : activeStreams) {
+            if(sender.equals(stream.sender)) {
+                flush(stream, handler);
+            }
+        }
+    }
+
+    private void flush(Stream stream, DrawHandler handler) {
+        while(stream.size > 0) {
+            releasePoint(stream, stream.poll(), handler);
+        }
+    }
+
+    private void deactivate(int index) {
+        Stream stream = activeStreams.get(index);
+        stream.active = false;
+
+        // The order of the streams doesn't matter, so the last one takes the place of the one removed
+        Stream last = activeStreams.remove(activeStreams.size() - 1);
+        if(index < activeStreams.size()) {
+            activeStreams.set(index, last);
+        }
+    }
+
+    private void releasePoint(Stream stream, BufferedPoint point, DrawHandler handler) {
+        stream.lastPoint.set(point.x, point.y, point.canvasID, point.color, point.pathStart, point.playoutTime);
+        stream.hasLastPoint = true;
+        draw(point, handler);
+    }
+
+    private void draw(BufferedPoint point, DrawHandler handler) {
+        output.set(point.x, point.y, point.canvasID, point.color, point.pathStart, false, false);
+        handler.handleDraw(output);
+    }
+}
@@ -3,17 +3,31 @@ package networking.client;
 import com.example.javafxtest.*;
 import javafx.application.Platform;
 import javafx.scene.paint.Color;
+import networking.BinaryProtocol;
+import networking.ColorPalette;
+import networking.Message;
+import networking.MessageHandlers;
+import networking.MessageType;
 import networking.NetworkMessage;
+import networking.SocketTuning;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The NetworkClient facilitates communication between the local game and the network server.
@@ -21,49 +35,177 @@ import java.util.concurrent.*;
  */
 public class NetworkClient {
 
-    // The amount of time (in ms) that the game will wait for a response from the server.
+    // The amount of time (in ms) that the blocking request methods will wait for a response from the server.
     private static final int SERVER_RESPONSE_TIMEOUT = 100;
-
-    private PrintWriter output;
-    private BufferedReader input;
+    // The amount of time (in ms) after which a request that never got a response is failed and forgotten
+    private static final int REQUEST_TIMEOUT = 10000;
+
+    // Drawn points are sent in stroke batches. A batch is sent STROKE_FLUSH_DELAY ms after its first point, or
+    // earlier if it still has more than STROKE_BATCH_SIZE * 3 / 4 points after being simplified when it is full.
+    private static final int STROKE_BATCH_SIZE = 64;
+    private static final int STROKE_FLUSH_DELAY = 50;
+    // Points closer than this (in pixels) to the previous point are dropped, and simplifying a stroke moves it by no
+    // more than this. The server quantises points to 1/8 pixel and draws lines 1 pixel wide.
+    private static final double STROKE_TOLERANCE = 0.5;
+
+    // Sends the stroke batches of every client once their delay has passed
+    private static final ScheduledExecutorService strokeFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Stroke Flush Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private OutputStream output;
+    // Writes everything sent to the server, so the game never waits for the socket
+    private final ClientSenderThread sender;
+    private InputStream input;
     private Socket socket;
+    // True if messages are exchanged as BinaryProtocol frames instead of lines of text
+    private boolean binary = false;
     private final List<NetworkObserver> observers;
 
-    public Color clientColor = null;
+    // Set by the network thread when a request succeeds, read by the application thread
+    public volatile Color clientColor = null;
+    // The palette index the server gave clientColor. Set before clientColor
+    private volatile int clientColorIndex = ColorPalette.NO_COLOR;
     public final InputHandler networkInputs;
-    public int currentCanvasID;
-
-    // A blocking queue used for thread safe communication between the main application thread and the network thread
-    // when registering a color or selecting a canvas
-    private final BlockingQueue<Boolean> serverBoolResponseQueue;
+    public volatile int currentCanvasID;
+    // The board of the room. Sent by the server when the client joins a room, before the ROOM_JOIN response
+    public volatile BoardGeometry board = BoardGeometry.DEFAULT;
+
+    // The requests waiting for a response from the server. The format is: Request ID, Response future
+    // The network thread completes the futures with the data of the responses as they arrive
+    private final Map<Integer, CompletableFuture<String>> pendingRequests;
+    private final AtomicInteger nextRequestID;
     private boolean clientRunning = false;
-    private boolean firstDraw = false;
+    private volatile boolean firstDraw = false;
+
+    // The stroke batch that hasn't been sent yet. Guarded by this
+    // Its points are at index 1 to strokeLength. Index 0 holds the last point sent for the same path, if
+    // strokeHasAnchor is true, so the simplification of the batch joins up with the previous batch.
+    private final double[] strokeXs = new double[STROKE_BATCH_SIZE + 1];
+    private final double[] strokeYs = new double[STROKE_BATCH_SIZE + 1];
+    private final int[] strokeTimes = new int[STROKE_BATCH_SIZE + 1];
+    private int strokeLength = 0;
+    private boolean strokeHasAnchor = false;
+    // The points up to this index have already been simplified and are never simplified again, so the error of each
+    // removed point is only measured once. The point at the index is the anchor of the next simplification
+    private int strokeSimplified;
+    private int strokeCanvasID;
+    private int strokeColorIndex;
+    private boolean strokePathStart;
+    private ScheduledFuture<?> strokeFlush = null;
+    // The area covered by the points sent on each canvas. The server rasterises the same simplified and quantised
+    // points, so both sides agree on the claim. Guarded by this
+    private CanvasCoverage strokeCoverage;
 
     private LobbyControllerCallback lobbyCallback;
 
 
     public NetworkClient(String host, String port) throws IOException, IllegalArgumentException {
-        serverBoolResponseQueue = new LinkedBlockingQueue<>();
+        this(host, port, false);
+    }
+
+    /**
+     * Connects to the server.
+     * @param host The host name of the server
+     * @param port The port of the server
+     * @param useBinaryProtocol True to ask the server for the binary protocol. The text protocol is used if the
+     *                          server doesn't agree to it.
+     */
+    public NetworkClient(String host, String port, boolean useBinaryProtocol) throws IOException, IllegalArgumentException {
+        this(host, port, useBinaryProtocol, new SocketTuning());
+    }
+
+    /**
+     * Connects to the server.
+     * @param host The host name of the server
+     * @param port The port of the server
+     * @param useBinaryProtocol True to ask the server for the binary protocol. The text protocol is used if the
+     *                          server doesn't agree to it.
+     * @param tuning The flush policy and socket options of the connection
+     */
+    public NetworkClient(String host, String port, boolean useBinaryProtocol, SocketTuning tuning) throws IOException, IllegalArgumentException {
+        pendingRequests = new ConcurrentHashMap<>();
+        nextRequestID = new AtomicInteger(1);
         observers = new ArrayList<>();
         networkInputs = new InputHandler();
         addObserver(networkInputs);
         currentCanvasID = -1;
-        socket = new Socket(host, Integer.parseInt(port));
+        strokeCoverage = createCoverage(board);
+        socket = new Socket();
+        tuning.applyBeforeConnect(socket);
+        socket.connect(new InetSocketAddress(host, Integer.parseInt(port)));
         try {
 
-            output = new PrintWriter(socket.getOutputStream(), true);
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            output = new BufferedOutputStream(socket.getOutputStream());
+            input = new BufferedInputStream(socket.getInputStream());
         }
         catch(IOException e) {
             e.printStackTrace();
         }
 
-        ClientNetworkThread networkThread = new ClientNetworkThread(input, observers);
+        sender = new ClientSenderThread(output, tuning);
+        sender.setName("Client Sender Thread");
+        sender.setDaemon(true);
+        sender.start();
+
+        if(useBinaryProtocol) {
+            negotiateBinaryProtocol();
+        }
+
+        ClientNetworkThread networkThread = new ClientNetworkThread(input, binary, observers);
         networkThread.setName("Client Network Thread");
         networkThread.setDaemon(true);
         networkThread.start();
     }
 
+    /**
+     * Asks the server to use the binary protocol. This happens before the network thread starts so the response is
+     * read here. See NetworkMessage.java for details
+     */
+    private void negotiateBinaryProtocol() throws IOException {
+        send(NetworkMessage.generateProtocolMessage(NetworkMessage.BINARY_PROTOCOL));
+
+        String response = BinaryProtocol.readLine(input);
+        if(response == null) {
+            throw new IOException("Server closed the connection during protocol negotiation");
+        }
+
+        binary = response.equals(NetworkMessage.addProtocolHeader(NetworkMessage.BINARY_PROTOCOL));
+    }
+
+    /**
+     * Sends a message to the server using the protocol in use.
+     * Any pending stroke batch is sent first so the server receives everything in the order it happened.
+     * @param message The text message (header + '-' + data)
+     */
+    private void send(String message) {
+        flushStrokeBatch();
+        write(message);
+    }
+
+    private void write(String message) {
+        if(binary) {
+            sendBytes(BinaryProtocol.encodeFrame(message));
+        }
+        else {
+            sendBytes((message + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void sendBytes(byte[] bytes) {
+        sender.send(bytes);
+    }
+
+    /**
+     * @return The number of messages sent that haven't been written to the socket yet. A value that keeps growing
+     * means the connection can't keep up with the game
+     */
+    public int getOutboundQueueDepth() {
+        return sender.getQueueDepth();
+    }
+
     private void addObserver(NetworkObserver obs) {
         this.observers.add(obs);
     }
@@ -82,31 +224,91 @@ public class NetworkClient {
     }
 
     /**
-     * Attempts to register a colour with the server. The method will block until a response from the server occurs
-     * or the response times out.
-     * @param color The colour being registered
-     * @return Returns true if the colour is successfully registered and false if the colour is already in use
+     * Sends a request and returns a future that is completed with the server's response.
+     * The request is tagged with a request ID so any number of requests can be waiting for a response at once.
+     * See NetworkMessage.java for details
+     * @param message The request
+     * @return A future completed with the data of the response by the network thread once the response arrives
      */
-    public boolean registerColor(Color color) {
-        output.println(NetworkMessage.addColorRequestHeader(Integer.toString(color.hashCode())));
-        Boolean response;
+    private CompletableFuture<String> request(String message) {
+        int requestID = nextRequestID.getAndIncrement();
+        CompletableFuture<String> response = new CompletableFuture<>();
+        pendingRequests.put(requestID, response);
 
+        // A response that never arrives must not keep the request around forever
+        response.orTimeout(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS)
+                .whenComplete((result, exception) -> pendingRequests.remove(requestID));
+
+        send(NetworkMessage.addRequestID(requestID, message));
+        return response;
+    }
+
+    /**
+     * Waits for the response to a request.
+     * @param response The response future returned by one of the async methods
+     * @param methodName The name of the calling method, used in the timeout message
+     * @return The response
+     */
+    private static boolean awaitResponse(CompletableFuture<Boolean> response, String methodName) {
         try {
-            response = serverBoolResponseQueue.poll(SERVER_RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS);
-            // Null response means timeout occurred
-            if(!Objects.nonNull(response)) {
-                throw new RuntimeException("Server timed out in registerColor");
-            }
+            return response.get(SERVER_RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS);
         }
-        catch (InterruptedException e) {
+        catch (TimeoutException e) {
+            throw new RuntimeException("Server timed out in " + methodName);
+        }
+        catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
         }
+    }
 
-        if(response) {
-            clientColor = color;
-        }
+    /**
+     * Joins a game room on the server. The room is created if it doesn't exist yet.
+     * This must be called before any other request is sent. Clients that never call it play in the default room.
+     * The method will block until a response from the server occurs or the response times out.
+     * @param roomName The name of the room
+     * @return Returns true if the room was joined and false if the client is already in a room
+     */
+    public boolean joinRoom(String roomName) {
+        return awaitResponse(joinRoomAsync(roomName), "joinRoom");
+    }
 
-        return response;
+    /**
+     * Joins a game room on the server without blocking. See joinRoom
+     * @param roomName The name of the room
+     * @return A future completed with true if the room was joined and false if the client is already in a room
+     */
+    public CompletableFuture<Boolean> joinRoomAsync(String roomName) {
+        return request(NetworkMessage.generateRoomJoinMessage(roomName)).thenApply(Boolean::parseBoolean);
+    }
+
+    /**
+     * Attempts to register a colour with the server. The method will block until a response from the server occurs
+     * or the response times out.
+     * @param color The colour being registered
+     * @return Returns true if the colour is successfully registered and false if the colour is already in use
+     */
+    public boolean registerColor(Color color) {
+        return awaitResponse(registerColorAsync(color), "registerColor");
+    }
+
+    /**
+     * Attempts to register a colour with the server without blocking. See registerColor
+     * @param color The colour being registered
+     * @return A future completed with true if the colour is successfully registered and false if the colour is
+     * already in use. clientColor is set before the future completes.
+     */
+    public CompletableFuture<Boolean> registerColorAsync(Color color) {
+        return request(NetworkMessage.addColorRequestHeader(Integer.toString(BinaryProtocol.encodeColor(color))))
+                .thenApply(response -> {
+                    int colorIndex = Integer.parseInt(response);
+                    if(colorIndex == ColorPalette.NO_COLOR) {
+                        return false;
+                    }
+
+                    clientColorIndex = colorIndex;
+                    clientColor = color;
+                    return true;
+                });
     }
 
     /**
@@ -117,53 +319,79 @@ public class NetworkClient {
      * @return true on success, false on failure
      */
     public boolean selectCanvasForDrawing(int canvasID) {
+        return awaitResponse(selectCanvasForDrawingAsync(canvasID), "selectCanvasForDrawing");
+    }
+
+    /**
+     * Attempts to select a canvas for drawing without blocking. See selectCanvasForDrawing
+     * @param canvasID The ID of the canvas
+     * @return A future completed with true on success and false on failure. On success currentCanvasID is set
+     * before the future completes.
+     */
+    public CompletableFuture<Boolean> selectCanvasForDrawingAsync(int canvasID) {
 
         if(!clientRunning) {
             throw new IllegalStateException("Attempting to select canvas without a running client");
         }
 
-        output.println(NetworkMessage.addCanvasRequestHeader(Integer.toString(canvasID)));
-
-        Boolean response;
-
-        try {
-            response = serverBoolResponseQueue.poll(SERVER_RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS);
-            // Null response means timeout occurred
-            if(!Objects.nonNull(response)) {
-                throw new RuntimeException("Server timed out in selectCanvasForDrawing");
-            }
-        }
-        catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-
-        if(response) {
-            currentCanvasID = canvasID;
-            firstDraw = true;
-        }
-
-        return response;
+        return request(NetworkMessage.addCanvasRequestHeader(Integer.toString(canvasID)))
+                .thenApply(Boolean::parseBoolean)
+                .thenApply(response -> {
+                    if(response) {
+                        currentCanvasID = canvasID;
+                        firstDraw = true;
+                    }
+                    return response;
+                });
     }
 
     /**
      * Releases the canvas owned by the client. If no canvases are owned then does nothing
+     * @return True if the points sent cover enough of the canvas for the server to claim it for the client. The server
+     * decides with the same points, so the result can be shown before it tells every client
      */
-    public void releaseCanvas() {
+    public synchronized boolean releaseCanvas() {
         if(!clientRunning) {
             throw new IllegalStateException("Attempting to release canvas without a running client");
         }
 
-        output.println(NetworkMessage.generateCanvasReleaseMessage());
+        // The pending stroke batch is sent and added to the coverage first
+        send(NetworkMessage.generateCanvasReleaseMessage());
+        int canvasID = currentCanvasID;
         currentCanvasID = -1;
+        if(canvasID == -1) {
+            return false;
+        }
+
+        boolean claimed = strokeCoverage.isClaimed(canvasID);
+        System.out.println("filled %: " + strokeCoverage.getCoverage(canvasID));
+        strokeCoverage.clear(canvasID);
+        return claimed;
+    }
+
+    private static CanvasCoverage createCoverage(BoardGeometry board) {
+        return new CanvasCoverage(board.getCanvasCount(), board.getCanvasSize(), board.getCanvasSize());
     }
 
     /**
      * Sends a message to the server indicate that a certain pixel on the registered canvas is drawn
      * The color of the pixel is the registered client color
+     * The point is added to the current stroke batch, which is sent after STROKE_FLUSH_DELAY ms, once it is still
+     * full after being simplified, or before any other message, whichever happens first
      * @param x The x coordinate of the pixel being drawn
      * @param y The y coordinate of the pixel being drawn
      */
     public void sendDrawing(double x, double y) {
+        sendDrawing(x, y, getStrokeTime());
+    }
+
+    /**
+     * The same as sendDrawing(x, y) for a point that was drawn earlier
+     * @param x The x coordinate of the pixel being drawn
+     * @param y The y coordinate of the pixel being drawn
+     * @param time The time the point was drawn, obtained from getStrokeTime
+     */
+    public void sendDrawing(double x, double y, int time) {
 
         if(!clientRunning) {
             throw new IllegalStateException("Attempting to draw without a running client");
@@ -176,81 +404,111 @@ public class NetworkClient {
             throw new IllegalStateException("Attempting to draw without registering a canvas");
         }
 
-        DrawInfo draw = new DrawInfo(x, y, currentCanvasID, clientColor, firstDraw, false, false);
-        output.println(NetworkMessage.generateDrawMessage(draw));
+        synchronized (this) {
+            // A new path always starts a new batch
+            if(firstDraw) {
+                flushStrokeBatch();
+                strokeHasAnchor = false;
+            }
+            // Moves too small to see aren't worth sending. The first point of a path is always sent
+            else if(isTooClose(x, y)) {
+                return;
+            }
 
-        firstDraw = false;
-    }
-    /**
-     * Sends a message to the server indicate the current canvas needs to be locked for other clients
-     */
-    public void sendLockCanvasRequest() {
+            if(strokeLength == 0) {
+                strokeCanvasID = currentCanvasID;
+                strokeColorIndex = clientColorIndex;
+                strokePathStart = firstDraw;
+                strokeSimplified = strokeHasAnchor ? 0 : 1;
+                strokeFlush = strokeFlusher.schedule(this::flushStrokeBatch, STROKE_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+            }
 
-        if(!clientRunning) {
-            throw new IllegalStateException("Attempting to lock canvas without a running client");
+            strokeLength++;
+            strokeXs[strokeLength] = x;
+            strokeYs[strokeLength] = y;
+            strokeTimes[strokeLength] = time;
+
+            // A full batch is simplified to make room, and only sent early if that doesn't free enough of it.
+            // This bounds the number of batches sent per second no matter how often the mouse reports its position
+            if(strokeLength == STROKE_BATCH_SIZE) {
+                simplifyStrokeBatch();
+                if(strokeLength > STROKE_BATCH_SIZE * 3 / 4) {
+                    flushStrokeBatch();
+                }
+            }
         }
 
-        if(clientColor == null) {
-            throw new IllegalStateException("Attempting to lock canvas without registering a color");
-        }
-        if(currentCanvasID == -1) {
-            throw new IllegalStateException("Attempting to lock canvas without registering a canvas");
-        }
-        String stringCanvasID = Integer.toString(currentCanvasID);
-        output.println(NetworkMessage.addCanvasLockRequestHeader(stringCanvasID));
+        firstDraw = false;
     }
+
     /**
-     * Sends a message to the server indicate the current canvas needs to be cleared for other clients
+     * Gets the current time of the clock used for the points of stroke batches. Other clients use the times to play
+     * the stroke back at the pace it was drawn.
+     * @return The time in milliseconds. Only the difference between two times is meaningful
      */
-    public void sendClearCanvas() {
+    public static int getStrokeTime() {
+        return (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
 
-        if(!clientRunning) {
-            throw new IllegalStateException("Attempting to clear canvas without a running client");
+    /**
+     * Checks if a point is within STROKE_TOLERANCE of the last point of the path. Must hold the lock on this
+     */
+    private boolean isTooClose(double x, double y) {
+        if(strokeLength == 0 && !strokeHasAnchor) {
+            return false;
         }
 
-        if(clientColor == null) {
-            throw new IllegalStateException("Attempting to clear canvas without registering a color");
-        }
-        if(currentCanvasID == -1) {
-            throw new IllegalStateException("Attempting to clear canvas without registering a canvas");
-        }
-        String stringCanvasID = Integer.toString(currentCanvasID);
-        output.println(NetworkMessage.addCanvasClearRequestHeader(stringCanvasID));
+        return Math.hypot(x - strokeXs[strokeLength], y - strokeYs[strokeLength]) < STROKE_TOLERANCE;
     }
 
-    public void sendOwnCanvas() {
-
-        if(!clientRunning) {
-            throw new IllegalStateException("Attempting to own canvas without a running client");
-        }
-
-        if(clientColor == null) {
-            throw new IllegalStateException("Attempting to own canvas without registering a color");
-        }
-        if(currentCanvasID == -1) {
-            throw new IllegalStateException("Attempting to own canvas without registering a canvas");
-        }
-        String stringCanvasID = Integer.toString(currentCanvasID);
-        output.println(NetworkMessage.addCanvasOwnRequestHeader(stringCanvasID, clientColor));
+    /**
+     * Removes the points added to the stroke batch since it was last simplified that don't change its shape.
+     * Must hold the lock on this
+     */
+    private void simplifyStrokeBatch() {
+        // The last point kept is measured from but never removed. For the first simplification of a batch it is the
+        // anchor, which isn't sent again
+        strokeLength = StrokeSimplifier.simplify(strokeXs, strokeYs, strokeTimes, strokeSimplified, strokeLength, STROKE_TOLERANCE);
+        strokeSimplified = strokeLength;
     }
 
     /**
-     * Sends a score of clients to the server
+     * Sends the points drawn since the last stroke batch was sent. Does nothing if there are none.
+     * The points are simplified first, the local canvas keeps every point. The points sent are added to the coverage.
      */
-    public void sendScore(int score) {
+    private synchronized void flushStrokeBatch() {
+        if(strokeLength == 0) {
+            return;
+        }
 
-        if(!clientRunning) {
-            throw new IllegalStateException("Attempting to send score without a running client");
+        if(strokeFlush != null) {
+            strokeFlush.cancel(false);
+            strokeFlush = null;
         }
 
-        if(clientColor == null) {
-            throw new IllegalStateException("Attempting to send score without registering a color");
+        simplifyStrokeBatch();
+        StrokeBatch batch = new StrokeBatch(strokeCanvasID, strokeColorIndex, strokePathStart,
+                Arrays.copyOfRange(strokeXs, 1, strokeLength + 1), Arrays.copyOfRange(strokeYs, 1, strokeLength + 1),
+                Arrays.copyOfRange(strokeTimes, 1, strokeLength + 1));
+        for(int i = 0; i < batch.getPointCount(); i++) {
+            strokeCoverage.addPoint(strokeCanvasID, BinaryProtocol.quantiseStrokeCoordinate(batch.getX(i)),
+                    BinaryProtocol.quantiseStrokeCoordinate(batch.getY(i)), strokePathStart && i == 0);
         }
 
-        String stringScore = Integer.toString(score);
-        output.println(NetworkMessage.generateScoresAndGameResults(stringScore, clientColor));
-    }
+        // The last point sent is the anchor of the next batch of the path
+        strokeXs[0] = strokeXs[strokeLength];
+        strokeYs[0] = strokeYs[strokeLength];
+        strokeTimes[0] = strokeTimes[strokeLength];
+        strokeHasAnchor = true;
+        strokeLength = 0;
 
+        if(binary) {
+            sendBytes(BinaryProtocol.encodeFrame(BinaryProtocol.STROKE_BATCH_OPCODE, BinaryProtocol.encodeStrokeBatch(batch)));
+        }
+        else {
+            write(NetworkMessage.generateStrokeBatchMessage(batch));
+        }
+    }
     /**
      * Starts the lobby with the given lobby callback
      * @param lobbyCallback The callback class for the lobby
@@ -258,11 +516,11 @@ public class NetworkClient {
      */
     public void startLobby(LobbyControllerCallback lobbyCallback, LobbyPlayer player) {
         this.lobbyCallback = lobbyCallback;
-        output.println(NetworkMessage.generateLobbyPlayerJoinMessage(player));
+        send(NetworkMessage.generateLobbyPlayerJoinMessage(player));
     }
 
     public void setPlayerReady(LobbyPlayer player, boolean isReady) {
-        output.println(NetworkMessage.generateLobbyPlayerReadyMessage(player, isReady));
+        send(NetworkMessage.generateLobbyPlayerReadyMessage(player, isReady));
     }
 
     /**
@@ -270,8 +528,23 @@ public class NetworkClient {
      * Handles receiving information from the server.
      */
     public class InputHandler implements NetworkObserver {
-        // This queue contains all the DrawInfo objects received from the server
-        private final ConcurrentLinkedQueue<DrawInfo> drawInfoQueue;
+        // The number of drawings that can wait for the game before the overload policy of the ring is applied
+        private static final int DRAW_RING_CAPACITY = 4096;
+        // The number of drawings handled between checks of the deadline
+        private static final int INPUT_BATCH_SIZE = 64;
+
+        // Passes the drawings received from the server to the game's thread
+        private final DrawRing drawRing = new DrawRing(DRAW_RING_CAPACITY);
+        // Holds back the timed strokes of other players until they are due. Only used by the game's thread
+        private final JitterBuffer jitterBuffer = new JitterBuffer();
+        // The colours registered in the room, sent by the server. Only used by the ClientNetworkThread
+        private final ColorPalette palette = new ColorPalette();
+        // Reads received drawings without creating objects. Only used by the ClientNetworkThread
+        private final BinaryProtocol.PointReader pointReader = new BinaryProtocol.PointReader(palette);
+        // The handlers of every message the server can send, and the message reused for each of them.
+        // Only used by the ClientNetworkThread
+        private final MessageHandlers<InputHandler> handlers;
+        private final Message receivedMessage = new Message();
         private final List<LobbyPlayer> lobbyPlayersList = new ArrayList<>();
 
         /**
@@ -290,17 +563,136 @@ public class NetworkClient {
         }
 
         private InputHandler() {
-            drawInfoQueue = new ConcurrentLinkedQueue<>();
+            handlers = new MessageHandlers<InputHandler>()
+                    .register(MessageType.DRAW, InputHandler::processDrawMessage)
+                    .register(MessageType.STROKE_BATCH, InputHandler::processStrokeBatchMessage)
+                    .register(MessageType.CANVAS_REQUEST, InputHandler::processResponse)
+                    .register(MessageType.COLOR_REQUEST, InputHandler::processResponse)
+                    .register(MessageType.ROOM_JOIN, InputHandler::processResponse)
+                    .register(MessageType.BOARD, InputHandler::processBoardMessage)
+                    .register(MessageType.PALETTE, InputHandler::processPaletteMessage)
+                    .register(MessageType.SCORE_AND_RESULTS, InputHandler::processScoreAndResultsMessage)
+                    // Canvases are locked by the server when they are claimed, so there is nothing to do
+                    .register(MessageType.CANVAS_LOCK, (handler, message) -> {})
+                    .register(MessageType.CANVAS_CLEAR, InputHandler::processCanvasClearMessage)
+                    .register(MessageType.CANVAS_OWN, InputHandler::processCanvasOwnMessage)
+                    .register(MessageType.LOBBY_PLAYER_JOIN, InputHandler::processLobbyPlayerJoinMessage)
+                    .register(MessageType.LOBBY_PLAYER_LEFT, InputHandler::processLobbyPlayerLeftMessage)
+                    .register(MessageType.LOBBY_PLAYER_READY, InputHandler::processLobbyPlayerReadyMessage)
+                    .register(MessageType.LOBBY_START_COUNTDOWN, InputHandler::processLobbyStartCountdownMessage);
         }
 
-        public boolean areInputsAvailable() {
-            return !drawInfoQueue.isEmpty();
+        /**
+         * Draws the drawings received since the last call, then the received strokes that are due.
+         * Must always be called by the same thread. The game calls it every frame.
+         * <p>
+         * Drawings that can't be handled before the deadline are left for the next call. While more than half the
+         * ring is waiting the game is falling behind, so only the last point of each run of points of the same stroke
+         * is drawn: the line to it covers the points skipped. See DrawRing for what happens once the ring is full.
+         * @param handler Draws the drawings
+         * @param deadline The System.nanoTime after which no more received drawings are handled
+         */
+        public void handleInputs(DrawHandler handler, long deadline) {
+            while(System.nanoTime() < deadline) {
+                int available = drawRing.available();
+                if(available == 0) {
+                    // The drawings that didn't fit in the ring come after every drawing in it
+                    DrawRecord draw = drawRing.pollOverflow();
+                    if(draw == null) {
+                        break;
+                    }
+
+                    handleDraw(draw, handler);
+                    continue;
+                }
+
+                boolean behind = available > drawRing.getCapacity() / 2;
+                int count = Math.min(available, INPUT_BATCH_SIZE);
+
+                for(int i = 0; i < count; i++) {
+                    DrawRecord draw = drawRing.get(i);
+                    if(behind && !draw.isPathStart() && !draw.batchStart && i + 1 < count && drawRing.get(i + 1).continues(draw)) {
+                        continue;
+                    }
+
+                    handleDraw(draw, handler);
+                }
+
+                drawRing.free(count);
+            }
+
+            jitterBuffer.release(getStrokeTime(), handler);
         }
 
-        public DrawInfo getNextInput() {
-            return drawInfoQueue.poll();
+        /**
+         * Draws a received drawing, or buffers it if it has a time. The buffered strokes it could overlap are drawn
+         * first so everything is drawn in the order it was received
+         */
+        private void handleDraw(DrawRecord draw, DrawHandler handler) {
+            if(draw.timed) {
+                jitterBuffer.add(draw);
+                return;
+            }
+
+            if(draw.isClearCanvas() || draw.isOwnCanvas()) {
+                jitterBuffer.flushCanvas(draw.getCanvasID(), handler);
+            }
+            else {
+                jitterBuffer.flushSender(draw.getColor(), handler);
+            }
+            handler.handleDraw(draw);
         }
 
+        /**
+         * Passes a drawing without a time to the game's thread. Never waits, see DrawRing.
+         * Note: This function runs in the ClientNetworkThread
+         */
+        private void queueDraw(double x, double y, int canvasID, Color color, boolean pathStart, boolean clearCanvas, boolean ownCanvas) {
+            drawRing.claim().set(x, y, canvasID, color, pathStart, clearCanvas, ownCanvas);
+            drawRing.publish();
+        }
+
+        /**
+         * Draw and stroke batch frames are read straight into the ring, so receiving a drawing creates no objects.
+         * Note: This function runs in the ClientNetworkThread
+         * @param opcode BinaryProtocol.DRAW_OPCODE or BinaryProtocol.STROKE_BATCH_OPCODE
+         * @param payload The frame, positioned after the opcode
+         * @return Always true
+         */
+        @Override
+        public boolean drawFrameReceived(byte opcode, ByteBuffer payload) {
+            if(opcode == BinaryProtocol.DRAW_OPCODE) {
+                pointReader.readDraw(payload);
+            }
+            else {
+                pointReader.readStrokeBatch(payload);
+            }
+
+            queuePoints();
+            return true;
+        }
+
+        /**
+         * Passes the points of the payload read by pointReader to the game's thread, one slot each.
+         * Points with times are played back through the jitter buffer at the pace they were drawn.
+         * Note: This function runs in the ClientNetworkThread
+         */
+        private void queuePoints() {
+            int arrivalTime = getStrokeTime();
+
+            while(pointReader.next()) {
+                DrawRecord point = drawRing.claim();
+                point.set(pointReader.getX(), pointReader.getY(), pointReader.getCanvasID(), pointReader.getColor(),
+                        pointReader.isPathStart(), pointReader.isClearCanvas(), pointReader.isOwnCanvas());
+                if(pointReader.hasTimes()) {
+                    point.timed = true;
+                    point.time = pointReader.getTime();
+                    point.batchStart = pointReader.getIndex() == 0;
+                    point.arrivalTime = arrivalTime;
+                }
+                drawRing.publish();
+            }
+        }
 
         /**
          * This function is called everytime the client receives any message from the server.
@@ -309,86 +701,115 @@ public class NetworkClient {
          */
         @Override
         public void messageReceived(String message) {
-            String header = message.split("-", 2)[0];
-            String data = message.split("-", 2)[1];
-
-            switch(header) {
-                case NetworkMessage.DRAW_MESSAGE_HEADER:
-                    drawInfoQueue.add(DrawInfo.fromJson(data));
-                    break;
-
-                    // Both cases result in the same code
-                case NetworkMessage.CANVAS_REQUEST_HEADER:
-                case NetworkMessage.COLOR_REQUEST_HEADER:
-                    // The main thread waits until there is something in the queue. This will wake up the main thread.
-                    serverBoolResponseQueue.add(Boolean.parseBoolean(data));
-                    break;
-                case NetworkMessage.CALCULATE_SCORE_AND_GET_RESULTS:
-                    String winnerScore = data.split("/")[0];
-                    String stringColor = data.split("/")[1];
-
-                    Color winnerColor = Color.valueOf(stringColor);
-                    int score = Integer.parseInt(winnerScore);
-                    GameResults results = new GameResults(score, winnerColor);
-                    Game.GameEndResults endResults = new Game.GameEndResults(results);
-                    Platform.runLater(() -> {
-                        endResults.run();
-                    });
-
-                    break;
-                case NetworkMessage.CANVAS_LOCK:
-                    break;
-                case NetworkMessage.CANVAS_CLEAR:
-                    DrawInfo clear = new DrawInfo(0, 0, Integer.parseInt(data), Color.TRANSPARENT, false, true, false);
-                    drawInfoQueue.add(clear);
-                    break;
-                case NetworkMessage.CANVAS_OWN:
-                    String[] msg = data.split("/", 2);
-                    Color color = Color.valueOf(msg[1]);
-                    DrawInfo own = new DrawInfo(0, 0, Integer.parseInt(msg[0]), color, false, false, true);
-                    drawInfoQueue.add(own);
-                    break;
-
-                case NetworkMessage.LOBBY_PLAYER_JOIN_HEADER:
-                    if(Objects.isNull(lobbyCallback)) {
-                        break;
-                    }
+            try {
+                handlers.dispatch(this, receivedMessage.parseText(message));
+            }
+            // A message that can't be parsed is dropped the same as one whose handler fails
+            catch (RuntimeException ex) {
+                System.out.println("Dropped a message from the server: " + ex.getMessage());
+            }
+        }
 
-                    String[] fields = data.split("/", 2);
-                    LobbyPlayer newPlayer = new LobbyPlayer(Color.valueOf(fields[0]), fields[1]);
-                    if(newPlayer.getPlayerColor().equals(clientColor)) {
-                        newPlayer = new LobbyPlayer(clientColor, "(You) " + fields[1]);
-                        newPlayer.setPlayerIsUser(true);
-                    }
-                    lobbyPlayersList.add(newPlayer);
-                    lobbyCallback.addPlayer(newPlayer);
-                    break;
-                case NetworkMessage.LOBBY_PLAYER_LEFT_HEADER:
-                    if(Objects.isNull(lobbyCallback)) {
-                        break;
-                    }
+        private void processDrawMessage(Message message) {
+            DrawInfo draw = DrawInfo.fromJson(message.getData());
+            queueDraw(draw.getX(), draw.getY(), draw.getCanvasID(), draw.getColor(), draw.isPathStart(), draw.isClearCanvas(), draw.isOwnCanvas());
+        }
 
-                    int leftPlayerIndex = getLobbyPlayerIndexByColor(Color.valueOf(data));
-                    lobbyCallback.removePlayer(leftPlayerIndex);
-                    lobbyPlayersList.remove(leftPlayerIndex);
-                    break;
-                case NetworkMessage.LOBBY_PLAYER_READY_HEADER:
-                    if(Objects.isNull(lobbyCallback)) {
-                        break;
-                    }
+        private void processStrokeBatchMessage(Message message) {
+            pointReader.readStrokeBatch(ByteBuffer.wrap(Base64.getDecoder().decode(message.getData())));
+            queuePoints();
+        }
 
-                    int readyPlayerIndex = getLobbyPlayerIndexByColor(Color.valueOf(data.split("/")[0]));
-                    boolean isReady = Boolean.parseBoolean(data.split("/")[1]);
-                    lobbyPlayersList.get(readyPlayerIndex).setPlayerReady(isReady);
-                    lobbyCallback.setReady(readyPlayerIndex, isReady);
-                    break;
-                case NetworkMessage.LOBBY_START_COUNTDOWN_HEADER:
-                    lobbyCallback.startGameCountdown();
-                    break;
-                default:
-                    throw new IllegalArgumentException("Received invalid network message");
+        /**
+         * Completes the request the response is for. See NetworkClient.request
+         */
+        private void processResponse(Message message) {
+            // Completing the future runs any callbacks waiting on the response, or wakes up a blocked thread
+            CompletableFuture<String> response = pendingRequests.remove(message.getRequestID());
+            if(response != null) {
+                response.complete(message.getData());
             }
+        }
+
+        private void processBoardMessage(Message message) {
+            board = BoardGeometry.fromString(message.getData());
+            synchronized (NetworkClient.this) {
+                strokeCoverage = createCoverage(board);
+            }
+        }
+
+        private void processPaletteMessage(Message message) {
+            String data = message.getData();
+            int separator = data.indexOf('/');
+            int colorIndex = Integer.parseInt(data, 0, separator, 10);
+            int rgba = Integer.parseInt(data, separator + 1, data.length(), 10);
+            palette.set(colorIndex, BinaryProtocol.decodeColor(rgba));
+        }
+
+        private void processScoreAndResultsMessage(Message message) {
+            String data = message.getData();
+            String winnerScore = data.split("/")[0];
+            int winnerColorIndex = Integer.parseInt(data.split("/")[1]);
+
+            // There is no winning colour if the game is tied
+            Color winnerColor = winnerColorIndex == ColorPalette.NO_COLOR ? Color.TRANSPARENT : palette.get(winnerColorIndex);
+            int score = Integer.parseInt(winnerScore);
+            GameResults results = new GameResults(score, winnerColor);
+            Game.GameEndResults endResults = new Game.GameEndResults(results);
+            Platform.runLater(() -> {
+                endResults.run();
+            });
+        }
+
+        private void processCanvasClearMessage(Message message) {
+            queueDraw(0, 0, Integer.parseInt(message.getData()), Color.TRANSPARENT, false, true, false);
+        }
+
+        private void processCanvasOwnMessage(Message message) {
+            String[] msg = message.getData().split("/", 2);
+            Color color = palette.get(Integer.parseInt(msg[1]));
+            queueDraw(0, 0, Integer.parseInt(msg[0]), color, false, false, true);
+        }
+
+        private void processLobbyPlayerJoinMessage(Message message) {
+            if(Objects.isNull(lobbyCallback)) {
+                return;
+            }
+
+            String[] fields = message.getData().split("/", 2);
+            LobbyPlayer newPlayer = new LobbyPlayer(Color.valueOf(fields[0]), fields[1]);
+            if(newPlayer.getPlayerColor().equals(clientColor)) {
+                newPlayer = new LobbyPlayer(clientColor, "(You) " + fields[1]);
+                newPlayer.setPlayerIsUser(true);
+            }
+            lobbyPlayersList.add(newPlayer);
+            lobbyCallback.addPlayer(newPlayer);
+        }
+
+        private void processLobbyPlayerLeftMessage(Message message) {
+            if(Objects.isNull(lobbyCallback)) {
+                return;
+            }
+
+            int leftPlayerIndex = getLobbyPlayerIndexByColor(Color.valueOf(message.getData()));
+            lobbyCallback.removePlayer(leftPlayerIndex);
+            lobbyPlayersList.remove(leftPlayerIndex);
+        }
+
+        private void processLobbyPlayerReadyMessage(Message message) {
+            if(Objects.isNull(lobbyCallback)) {
+                return;
+            }
+
+            String data = message.getData();
+            int readyPlayerIndex = getLobbyPlayerIndexByColor(Color.valueOf(data.split("/")[0]));
+            boolean isReady = Boolean.parseBoolean(data.split("/")[1]);
+            lobbyPlayersList.get(readyPlayerIndex).setPlayerReady(isReady);
+            lobbyCallback.setReady(readyPlayerIndex, isReady);
+        }
 
+        private void processLobbyStartCountdownMessage(Message message) {
+            lobbyCallback.startGameCountdown();
         }
     }
 
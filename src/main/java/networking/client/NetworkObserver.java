@@ -1,5 +1,41 @@
 package networking.client;
 
+import com.example.javafxtest.DrawInfo;
+import com.example.javafxtest.StrokeBatch;
+import networking.NetworkMessage;
+
+import java.nio.ByteBuffer;
+
 public interface NetworkObserver {
     void messageReceived(String message);
+
+    /**
+     * Called instead of messageReceived for draw messages received with the binary protocol.
+     * By default the drawing is converted to its text message and passed to messageReceived.
+     * @param draw The drawing received from the server
+     */
+    default void drawReceived(DrawInfo draw) {
+        messageReceived(NetworkMessage.generateDrawMessage(draw));
+    }
+
+    /**
+     * Called instead of messageReceived for stroke batches received with the binary protocol.
+     * By default the batch is converted to its text message and passed to messageReceived.
+     * @param batch The stroke batch received from the server
+     */
+    default void strokeBatchReceived(StrokeBatch batch) {
+        messageReceived(NetworkMessage.generateStrokeBatchMessage(batch));
+    }
+
+    /**
+     * Called with every draw and stroke batch frame received with the binary protocol, before it is decoded.
+     * An observer can read the points from the frame itself to avoid creating a DrawInfo or StrokeBatch.
+     * By default nothing is done and drawReceived or strokeBatchReceived is called.
+     * @param opcode BinaryProtocol.DRAW_OPCODE or BinaryProtocol.STROKE_BATCH_OPCODE
+     * @param payload The frame, positioned after the opcode. It is reused once this method returns, so it must not be kept
+     * @return True if the frame has been handled and drawReceived or strokeBatchReceived must not be called
+     */
+    default boolean drawFrameReceived(byte opcode, ByteBuffer payload) {
+        return false;
+    }
 }
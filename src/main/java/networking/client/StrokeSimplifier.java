@@ -0,0 +1,92 @@
+package networking.client;
+
+/**
+ * Removes the points of a stroke that barely change its shape, using the Ramer-Douglas-Peucker algorithm.
+ * <p>
+ * A point is kept if it is further than the tolerance from the line between the points kept around it, so the
+ * simplified stroke never strays more than the tolerance from the drawn one. Mice that report hundreds of nearly
+ * collinear points per second get their straight runs reduced to their ends.
+ * <p>
+ * The points are given as parallel arrays and simplified in place.
+ */
+final class StrokeSimplifier {
+
+    private StrokeSimplifier() {}
+
+    /**
+     * Simplifies the points from index first to index last. Both ends are always kept and the points before first
+     * and after last are left as they are.
+     * @param xs The x coordinates of the points
+     * @param ys The y coordinates of the points
+     * @param times The times of the points. They are moved along with the coordinates
+     * @param first The index of the first point
+     * @param last The index of the last point
+     * @param tolerance The furthest a removed point may be from the simplified stroke
+     * @return The index of the last point after the kept points are moved together
+     */
+    static int simplify(double[] xs, double[] ys, int[] times, int first, int last, double tolerance) {
+        if(last - first < 2) {
+            return last;
+        }
+
+        boolean[] keep = new boolean[last - first + 1];
+        keep[0] = true;
+        keep[keep.length - 1] = true;
+        markKeptPoints(xs, ys, first, first, last, tolerance * tolerance, keep);
+
+        int end = first;
+        for(int i = first + 1; i <= last; i++) {
+            if(keep[i - first]) {
+                end++;
+                xs[end] = xs[i];
+                ys[end] = ys[i];
+                times[end] = times[i];
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Marks the point furthest from the line between start and end as kept if it is further than the tolerance,
+     * then does the same on both sides of it
+     */
+    private static void markKeptPoints(double[] xs, double[] ys, int first, int start, int end, double toleranceSquared, boolean[] keep) {
+        if(end - start < 2) {
+            return;
+        }
+
+        double dx = xs[end] - xs[start];
+        double dy = ys[end] - ys[start];
+        double lengthSquared = dx * dx + dy * dy;
+
+        int furthest = -1;
+        double furthestDistance = toleranceSquared;
+        for(int i = start + 1; i < end; i++) {
+            double distance = distanceSquared(xs[i] - xs[start], ys[i] - ys[start], dx, dy, lengthSquared);
+            if(distance > furthestDistance) {
+                furthest = i;
+                furthestDistance = distance;
+            }
+        }
+
+        if(furthest == -1) {
+            return;
+        }
+
+        keep[furthest - first] = true;
+        markKeptPoints(xs, ys, first, start, furthest, toleranceSquared, keep);
+        markKeptPoints(xs, ys, first, furthest, end, toleranceSquared, keep);
+    }
+
+    /**
+     * @return The squared distance of point (px, py) from the segment between (0, 0) and (dx, dy)
+     */
+    private static double distanceSquared(double px, double py, double dx, double dy, double lengthSquared) {
+        // A stroke that returns to where it started is measured from its start
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        double ex = px - t * dx;
+        double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,146 @@
+package networking.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free table of which client is drawing on each canvas and which canvases are locked.
+ * <p>
+ * Ownership is stored in an array indexed by canvasID and changed with compare-and-set, so every operation is O(1)
+ * and none of them need the ServerData lock.
+ * All methods are thread-safe and can be called by any thread without worrying about concurrency.
+ */
+class CanvasTable {
+
+	// The value stored for a canvas that no one is drawing on. ClientIDs are never 0.
+	private static final int NO_OWNER = 0;
+
+	private final int canvasCount;
+
+	// The clientID of the client drawing on each canvas, indexed by canvasID
+	private final AtomicIntegerArray owners;
+	// The canvas each client is drawing on. The format is: ClientID, CanvasID
+	private final ConcurrentHashMap<Integer, Integer> clientCanvases;
+
+	// A bitset of the locked (fully coloured in) canvases, 64 canvases per word
+	private final AtomicLongArray locked;
+	private final AtomicInteger lockedCount;
+
+	CanvasTable(int canvasCount) {
+		this.canvasCount = canvasCount;
+		owners = new AtomicIntegerArray(canvasCount);
+		clientCanvases = new ConcurrentHashMap<>();
+		locked = new AtomicLongArray((canvasCount + 63) / 64);
+		lockedCount = new AtomicInteger();
+	}
+
+	private void checkCanvasID(int canvasID) {
+		if(canvasID >= canvasCount || canvasID < 0) {
+			throw new IllegalArgumentException("Invalid canvasID");
+		}
+	}
+
+	/**
+	 * Attempts to acquire a canvas for drawing. A client can only draw on one canvas at a time, so it must release
+	 * its canvas through ServerData.releaseAcquiredCanvas, which claims or clears it, before acquiring another.
+	 * @param clientID The ID of the client
+	 * @param canvasID The ID of the canvas
+	 * @return True if the client successfully acquired the canvas, false if it is locked, being drawn on by someone
+	 * else or the client is already drawing on a canvas
+	 */
+	boolean acquire(int clientID, int canvasID) {
+		checkCanvasID(canvasID);
+
+		if(isLocked(canvasID) || clientCanvases.containsKey(clientID)) {
+			return false;
+		}
+
+		if(!owners.compareAndSet(canvasID, NO_OWNER, clientID)) {
+			return false;
+		}
+
+		clientCanvases.put(clientID, canvasID);
+		return true;
+	}
+
+	/**
+	 * @param clientID The ID of the client
+	 * @return The ID of the canvas acquired by the client, or -1 if the client hasn't acquired a canvas
+	 */
+	int getAcquiredCanvas(int clientID) {
+		Integer canvasID = clientCanvases.get(clientID);
+		return canvasID == null ? -1 : canvasID;
+	}
+
+	/**
+	 * Releases the canvas acquired by the client. Does nothing if the client hasn't acquired a canvas.
+	 * @param clientID The ID of the client
+	 */
+	void release(int clientID) {
+		Integer canvasID = clientCanvases.remove(clientID);
+		if(canvasID != null) {
+			owners.compareAndSet(canvasID, clientID, NO_OWNER);
+		}
+	}
+
+	/**
+	 * @param clientID The ID of the client
+	 * @param canvasID The ID of the canvas
+	 * @return True if the client is currently drawing on the canvas
+	 */
+	boolean isOwnedBy(int clientID, int canvasID) {
+		return canvasID >= 0 && canvasID < canvasCount && owners.get(canvasID) == clientID;
+	}
+
+	/**
+	 * Locks the canvas so it can no longer be acquired. Does nothing if the canvas is already locked.
+	 * @param canvasID The ID of the canvas
+	 */
+	void lock(int canvasID) {
+		checkCanvasID(canvasID);
+
+		int word = canvasID >>> 6;
+		long bit = 1L << canvasID;
+		long current;
+		do {
+			current = locked.get(word);
+			if((current & bit) != 0) {
+				return;
+			}
+		} while(!locked.compareAndSet(word, current, current | bit));
+
+		lockedCount.incrementAndGet();
+	}
+
+	/**
+	 * @param canvasID The ID of the canvas
+	 * @return True if the canvas is locked
+	 */
+	boolean isLocked(int canvasID) {
+		return (locked.get(canvasID >>> 6) & (1L << canvasID)) != 0;
+	}
+
+	/**
+	 * @return True if every canvas is locked, meaning the game has ended
+	 */
+	boolean allLocked() {
+		return lockedCount.get() == canvasCount;
+	}
+
+	/**
+	 * Releases and unlocks every canvas.
+	 * This must not be called while other threads are still using the table.
+	 */
+	void clear() {
+		for(int i = 0; i < canvasCount; i++) {
+			owners.set(i, NO_OWNER);
+		}
+		for(int i = 0; i < locked.length(); i++) {
+			locked.set(i, 0);
+		}
+		clientCanvases.clear();
+		lockedCount.set(0);
+	}
+}
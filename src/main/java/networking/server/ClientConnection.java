@@ -0,0 +1,32 @@
+package networking.server;
+
+/**
+ * The server side of a single client connection.
+ * <p>
+ * ServerData sends every outgoing message through this interface so that the game logic doesn't depend on
+ * how the connection is served (a blocking ClientThread or an nio event loop).
+ */
+interface ClientConnection {
+
+	/**
+	 * Sends a single message to the client, encoded with the protocol the client uses.
+	 * @param message The message being sent
+	 */
+	void send(ServerMessage message);
+
+	/**
+	 * Switches the connection to the binary protocol. Every message sent or received after this call is a
+	 * BinaryProtocol frame. Called once the server has answered the client's protocol request.
+	 */
+	void useBinaryProtocol();
+
+	/**
+	 * Closes the connection. Cleanup of the client's server data happens through the normal disconnect path.
+	 */
+	void close();
+
+	/**
+	 * @return A human readable description of the remote end of the connection, used for logging
+	 */
+	String getRemoteAddress();
+}
@@ -0,0 +1,281 @@
+package networking.server;
+
+import com.example.javafxtest.DrawInfo;
+import com.example.javafxtest.LobbyPlayer;
+import com.example.javafxtest.StrokeBatch;
+import javafx.scene.paint.Color;
+import networking.BinaryProtocol;
+import networking.ColorPalette;
+import networking.Message;
+import networking.MessageHandlers;
+import networking.MessageType;
+import networking.NetworkMessage;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * ClientSession holds the game state of a single connected client and handles all the messages sent to the server
+ * by that client.
+ * <p>
+ * A client plays in one game room. The room is chosen by the client's first message: either a ROOM_JOIN message
+ * or, for clients that never send one, the default room.
+ * <p>
+ * Messages are passed to their handler through a dispatch table indexed by the message type. A message that fails
+ * or can't be parsed is reported and dropped without disconnecting the client.
+ * <p>
+ * It doesn't do any I/O itself. The thread serving the connection (a ClientThread or an nio event loop) passes each
+ * received line to processMessage, or each frame to processFrame once the binary protocol is in use, and calls
+ * disconnected once the connection is gone.
+ */
+class ClientSession {
+	// The handlers of every message a client can send. Built once and shared by every session
+	private static final MessageHandlers<ClientSession> HANDLERS = new MessageHandlers<ClientSession>()
+			.register(MessageType.PROTOCOL, (session, message) -> session.processProtocolRequest(message.getData()))
+			.register(MessageType.ROOM_JOIN, (session, message) -> session.processRoomJoin(message.getData(), message.getRequestID()))
+			.register(MessageType.DRAW, ClientSession::processDrawMessage)
+			.register(MessageType.STROKE_BATCH, ClientSession::processStrokeBatchMessage)
+			.register(MessageType.CANVAS_REQUEST, (session, message) -> session.processCanvasRequest(message.getData(), message.getRequestID()))
+			.register(MessageType.CANVAS_RELEASE, (session, message) -> session.processCanvasRelease())
+			.register(MessageType.COLOR_REQUEST, (session, message) -> session.processColorRequest(message.getData(), message.getRequestID()))
+			.register(MessageType.LOBBY_PLAYER_JOIN, (session, message) -> session.processPlayerJoinMessage(message.getData()))
+			.register(MessageType.LOBBY_PLAYER_READY, (session, message) -> session.processPlayerReadyMessage(message.getData()));
+
+	private final ClientConnection connection;
+	// Reused for every message received from the client
+	private final Message message = new Message();
+	private final int clientID;
+
+	// The room the client is playing in. Null until the client joins a room
+	private ServerData room = null;
+
+	private LobbyPlayer player = null;
+
+	ClientSession(ClientConnection connection) {
+		this.connection = connection;
+		clientID = GameRooms.getInstance().nextClientID();
+	}
+
+	/**
+	 * Removes the client from its room and tells the lobby that the player left.
+	 */
+	void disconnected() {
+		if(room != null) {
+			sendLobbyPlayerLeft(); // Send disconnect message if client disconnected
+			room.removeClient(clientID);
+		}
+		System.out.println("Client Disconnected (" + connection.getRemoteAddress() + ")");
+	}
+
+	private void sendLobbyPlayerLeft() {
+		if(Objects.nonNull(player)) {
+			String message = NetworkMessage.generateLobbyPlayerLeftMessage(player);
+			room.addLobbyMessageToList(message);
+			room.sendMessage(message);
+		}
+	}
+
+	void processMessage(String msg) {
+		// Messages are split into 2 parts.
+		// The header indicates what the message is and data contains the contents of the message
+		// The header and data are separated by a '-' character. See NetworkMessage.java for details
+		// Requests that expect a response can also start with a request ID
+		try {
+			dispatch(message.parseText(msg));
+		}
+		// A message that can't be parsed is dropped the same as one whose handler fails
+		catch (RuntimeException ex) {
+			dropMessage(ex);
+		}
+	}
+
+	/**
+	 * Processes a single binary protocol frame. See BinaryProtocol.java for details
+	 * @param frame The frame without its length prefix, positioned at the opcode
+	 */
+	void processFrame(ByteBuffer frame) {
+		try {
+			dispatch(message.parseFrame(frame));
+		}
+		// A frame that can't be parsed is dropped the same as one whose handler fails
+		catch (RuntimeException ex) {
+			dropMessage(ex);
+		}
+	}
+
+	private void dispatch(Message message) {
+		// Clients that don't ask for a room play in the default room. The protocol must be chosen before that
+		if(message.getType() != MessageType.PROTOCOL && message.getType() != MessageType.ROOM_JOIN) {
+			joinDefaultRoomIfNeeded();
+		}
+
+		HANDLERS.dispatch(this, message);
+	}
+
+	private void dropMessage(RuntimeException ex) {
+		System.out.println("Dropped a message from " + connection.getRemoteAddress() + ": " + ex.getMessage());
+		ex.printStackTrace();
+	}
+
+	private void joinDefaultRoomIfNeeded() {
+		// Clients that don't ask for a room play in the default room
+		if(room == null) {
+			joinRoom(GameRooms.DEFAULT_ROOM);
+		}
+	}
+
+	private void joinRoom(String roomName) {
+		room = GameRooms.getInstance().joinRoom(roomName, clientID, connection);
+
+		// The board is sent before anything else so the client knows the valid canvas IDs
+		room.sendMessage(NetworkMessage.generateBoardMessage(room.getBoard()), clientID);
+	}
+
+	private void processProtocolRequest(String data) {
+		// The protocol can only be changed before the client joins a room. The response is always sent as text
+		boolean binary = room == null && data.equals(NetworkMessage.BINARY_PROTOCOL);
+
+		connection.send(new ServerMessage(NetworkMessage.addProtocolHeader(binary ? NetworkMessage.BINARY_PROTOCOL : NetworkMessage.TEXT_PROTOCOL)));
+		if(binary) {
+			connection.useBinaryProtocol();
+		}
+	}
+
+	/**
+	 * Sends the response to a request back to the client
+	 * @param requestID The ID of the request, or 0 if the request didn't have one
+	 * @param message The response
+	 */
+	private void respond(int requestID, String message) {
+		room.sendMessage(requestID == 0 ? message : NetworkMessage.addRequestID(requestID, message), clientID);
+	}
+
+	private void processRoomJoin(String data, int requestID) {
+		// A client can only join a single room, and only before sending any other message
+		if(room != null) {
+			respond(requestID, NetworkMessage.addRoomJoinHeader(Boolean.toString(false)));
+			return;
+		}
+
+		joinRoom(data);
+		respond(requestID, NetworkMessage.addRoomJoinHeader(Boolean.toString(true)));
+	}
+
+	private void processDrawMessage(Message message) {
+		if(message.isBinary()) {
+			processDraw(BinaryProtocol.decodeDraw(message.getPayload()), null);
+		}
+		else {
+			String data = message.getData();
+			processDraw(DrawInfo.fromJson(data), data);
+		}
+	}
+
+	private void processStrokeBatchMessage(Message message) {
+		if(message.isBinary()) {
+			processStrokeBatch(BinaryProtocol.getPayload(message.getPayload()));
+		}
+		else {
+			processStrokeBatch(Base64.getDecoder().decode(message.getData()));
+		}
+	}
+
+	/**
+	 * Checks the drawing is allowed and forwards it to every other client in the room
+	 * @param info The drawing
+	 * @param json The Gson serialization of the drawing if it was received as text, null otherwise
+	 */
+	private void processDraw(DrawInfo info, String json) {
+		// Gson reads NaN and Infinity, and a binary draw can hold them too
+		if(!Double.isFinite(info.getX()) || !Double.isFinite(info.getY())) {
+			throw new IllegalArgumentException("Attempting to draw at an invalid point");
+		}
+
+		int rgba = BinaryProtocol.encodeColor(info.getColor());
+		int canvasID = info.getCanvasID();
+
+		// Check the colour and canvas are valid
+		if(!room.checkValidCanvas(clientID, canvasID)) {
+			throw new IllegalStateException("Attempting to draw on an canvas that isn't registered to the user");
+		}
+		if(!room.checkRegisteredColor(clientID, rgba)) {
+			// TODO: Implement sending errors to the client
+			throw new IllegalStateException("Attempting to draw with an unregistered colour!");
+		}
+
+		room.addCoverage(canvasID, info.getX(), info.getY(), info.isPathStart());
+		room.sendDraw(ServerMessage.draw(info, json), canvasID, clientID);
+	}
+
+	/**
+	 * Checks the stroke is allowed and forwards it to every other client in the room
+	 * @param payload The encoded stroke batch. See BinaryProtocol.encodeStrokeBatch
+	 */
+	private void processStrokeBatch(byte[] payload) {
+		StrokeBatch batch = BinaryProtocol.decodeStrokeBatch(ByteBuffer.wrap(payload));
+
+		// Check the colour and canvas are valid
+		if(!room.checkValidCanvas(clientID, batch.getCanvasID())) {
+			throw new IllegalStateException("Attempting to draw on an canvas that isn't registered to the user");
+		}
+		if(!room.checkRegisteredColorIndex(clientID, batch.getColorIndex())) {
+			throw new IllegalStateException("Attempting to draw with an unregistered colour!");
+		}
+
+		for(int i = 0; i < batch.getPointCount(); i++) {
+			room.addCoverage(batch.getCanvasID(), batch.getX(i), batch.getY(i), batch.isPathStart() && i == 0);
+		}
+		room.sendDraw(ServerMessage.strokeBatch(payload), batch.getCanvasID(), clientID);
+	}
+
+	private void processCanvasRequest(String data, int requestID) {
+		int canvasID = Integer.parseInt(data);
+
+		boolean success = room.acquireCanvasForDrawing(clientID, canvasID);
+
+		respond(requestID, NetworkMessage.addCanvasRequestHeader(Boolean.toString(success)));
+	}
+
+	private void processCanvasRelease() {
+		room.releaseAcquiredCanvas(clientID);
+	}
+
+	private void processColorRequest(String data, int requestID) {
+		int rgba = Integer.parseInt(data);
+
+		int colorIndex = room.registerColor(clientID, rgba);
+		// Everyone learns the colour's palette index before the client can draw with it
+		if(colorIndex != ColorPalette.NO_COLOR) {
+			room.sendMessage(NetworkMessage.generatePaletteMessage(colorIndex, rgba));
+		}
+		respond(requestID, NetworkMessage.addColorRequestHeader(Integer.toString(colorIndex)));
+	}
+
+	private void processPlayerJoinMessage(String data) {
+		String[] fields = data.split("/");
+		player = new LobbyPlayer(Color.valueOf(fields[0]), fields[1]);
+		String message = NetworkMessage.addLobbyPlayerJoinHeader(data);
+
+
+		// Send message to self, then send history to self, then add to history, then send to everyone else
+		// A message must always be added to history before being sent to everyone
+		// this prevents someone from joining at the perfect time and missing the message since it was sent to everyone (they didn't join yet)
+		// then they asked for history and got it (message wasn't in history) then finally the message got added to history but they missed it.
+		// The self entry needs to be the first one the new player gets so it needs to be sent before history leading to this setup.
+		room.sendMessage(message, clientID);
+		room.sendLobbyMessageHistory(clientID);
+		room.addLobbyMessageToList(message);
+		room.sendMessageExcluding(message, clientID);
+
+		room.lobbyPlayerJoined(clientID);
+	}
+
+	private void processPlayerReadyMessage(String data) {
+		room.lobbyPlayerReady(clientID, Boolean.parseBoolean(data.split("/")[1]));
+		String message = NetworkMessage.addLobbyPlayerReadyHeader(data);
+		room.addLobbyMessageToList(message);
+		room.sendMessage(message);
+	}
+
+}
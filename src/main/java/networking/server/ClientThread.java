@@ -1,228 +1,199 @@
 package networking.server;
 
-import com.example.javafxtest.DrawInfo;
-import com.example.javafxtest.LobbyPlayer;
-import javafx.scene.paint.Color;
-import networking.NetworkMessage;
+import networking.BinaryProtocol;
+import networking.SocketTuning;
 
 import java.io.*;
 import java.net.*;
-import java.util.Objects;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
- * ClientThread is the thread that is created for every new client that connects to the server.
- * It handles all the messages sent to the server from the client and is also responsible for sending responses
+ * ClientThread is the task that is started for every new client that connects to the server when the server
+ * runs in blocking or virtual mode. It reads the messages sent by the client, as lines of text or as BinaryProtocol
+ * frames, and hands them to the client's ClientSession.
+ * <p>
+ * The NetworkServer runs each ClientThread on its own platform or virtual thread depending on the server mode.
+ * Messages sent to the client are queued and written by a separate writer task on the same executor, so a client
+ * that reads slowly never blocks the thread sending to it. The writer flushes according to the server's SocketTuning.
  */
-public class ClientThread extends Thread {
+public class ClientThread implements Runnable {
 	private final Socket socket;
-	private final ServerData server;
-	private final int clientID;
-	private BufferedReader input;
+	private final ExecutorService executor;
+	private final ServerConfig config;
+	private InputStream input;
 
-	private LobbyPlayer player = null;
-
-	public ClientThread(Socket socket) {
+	public ClientThread(Socket socket, ExecutorService executor, ServerConfig config) {
 		this.socket = socket;
-		server = ServerData.getInstance();
-		clientID = socket.hashCode();
+		this.executor = executor;
+		this.config = config;
 	}
 
 	public void run() {
 		System.out.println("Client Thread Starting");
-		PrintWriter output = null;
+		Connection connection = null;
+		ClientSession session = null;
 		try {
-			input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-			output = new PrintWriter(socket.getOutputStream(), true);
+			input = new BufferedInputStream(socket.getInputStream());
+			OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+
+			connection = new Connection(output);
+			session = new ClientSession(connection);
 
-			server.addClient(clientID, output);
+			// The first message is always a line of text. It is read without reading any bytes past it since it may
+			// switch the connection to the binary protocol.
+			String firstLine = BinaryProtocol.readLine(input);
+			if(firstLine == null) {
+				throw new EOFException();
+			}
+			session.processMessage(firstLine);
+
+			if(connection.binary) {
+				DataInputStream frames = new DataInputStream(input);
+
+				// It is very intentional to not leave this while loop unless an exception occurs.
+				//noinspection InfiniteLoopStatement
+				while(true) {
+					// readFrame is a blocking method so this thread will wait here until it receives a whole frame
+					session.processFrame(BinaryProtocol.readFrame(frames));
+				}
+			}
+
+			BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
 
 			// It is very intentional to not leave this while loop unless an exception occurs.
 			//noinspection InfiniteLoopStatement
 			while(true) {
-				// input.readLine is a blocking method so this thread will wait here until it receives an input
-				processMessage(input.readLine());
-			}
-		}
-		// SocketException should mean that the client disconnected
-		catch (SocketException ex) {
-			sendLobbyPlayerLeft(); // Send disconnect message if client disconnected
-			server.removeClient(clientID);
-			System.out.println("Client Disconnected (" + socket.getInetAddress().toString()
-					+ ":" + socket.getPort() + ")");
-
-			// I'm not completely sure if these need to be closed, but it shouldn't hurt to explicitly close them
-			try {
-				if (output != null) {
-					output.close();
+				// lines.readLine is a blocking method so this thread will wait here until it receives an input
+				String line = lines.readLine();
+				if(line == null) {
+					throw new EOFException();
 				}
-
-				socket.close();
-				input.close();
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
+				session.processMessage(line);
 			}
 		}
+		// SocketException or EOFException should mean that the client disconnected
+		catch (SocketException | EOFException ignored) {
+		}
+		// Anything else, e.g. an invalid frame or a line that is too long, ends the connection the same way
 		catch (IOException ex) {
 			System.out.println("Exception on Server: " + ex.getMessage());
 			ex.printStackTrace();
 		}
+		// The client is removed however the connection ends, so its room, canvas and colour are never left held
+		finally {
+			if(session != null) {
+				session.disconnected();
+			}
+			if(connection != null) {
+				connection.stopWriter();
+			}
 
-		System.out.println("Client Thread Stopping");
-	}
-
-	private void sendLobbyPlayerLeft() {
-		String message = NetworkMessage.generateLobbyPlayerLeftMessage(player);
-		server.addLobbyMessageToList(message);
-		if(Objects.nonNull(player)) {
-			server.sendMessage(message);
+			// Closing the socket also closes its streams
+			try {
+				socket.close();
+			}
+			catch (IOException ignored) {
+			}
 		}
-	}
 
-	private void processMessage(String msg) {
-		// Messages are split into 2 parts.
-		// The header indicates what the message is and data contains the contents of the message
-		// The header and data are separated by a '-' character. See NetworkMessage.java for details
-
-		String header = msg.split("-", 2)[0];
-		String data = msg.split("-", 2)[1];
-
-		// Call the appropriate function based on the header
-		switch (header) {
-			case NetworkMessage.DRAW_MESSAGE_HEADER:
-				processDrawMessage(data);
-				break;
-			case NetworkMessage.CANVAS_REQUEST_HEADER:
-				processCanvasRequest(data);
-				break;
-			case NetworkMessage.CANVAS_RELEASE_HEADER:
-				processCanvasRelease();
-				break;
-			case NetworkMessage.COLOR_REQUEST_HEADER:
-				processColorRequest(data);
-				break;
-			case NetworkMessage.CANVAS_LOCK:
-				processLockMessage(data);
-				break;
-			case NetworkMessage.CANVAS_CLEAR:
-				processCanvasClearMessage(data);
-				break;
-			case NetworkMessage.CANVAS_OWN:
-				processCanvasOwnMessage(data);
-				break;
-			case NetworkMessage.CALCULATE_SCORE_AND_GET_RESULTS:
-				processCalculateScoreRequest(data);
-				break;
-			case NetworkMessage.LOBBY_PLAYER_JOIN_HEADER:
-				processPlayerJoinMessage(data);
-				break;
-			case NetworkMessage.LOBBY_PLAYER_READY_HEADER:
-				processPlayerReadyMessage(data);
-				break;
-			default:
-				// TODO: Don't throw exception on server, instead sent some error to client
-				throw new IllegalArgumentException("Invalid Message being sent over network");
-		}
+		System.out.println("Client Thread Stopping");
 	}
 
-	private void processDrawMessage(String data) {
-		DrawInfo info = DrawInfo.fromJson(data);
-
-		int colorHash = info.getColor().hashCode();
-		int canvasID = info.getCanvasID();
-
-		// Check the colour and canvas are valid
-		if(!server.checkValidCanvas(clientID, canvasID)) {
-			throw new IllegalStateException("Attempting to draw on an canvas that isn't registered to the user");
-		}
-		if(!server.checkRegisteredColor(clientID, colorHash)) {
-			// TODO: Implement sending errors to the client
-			throw new IllegalStateException("Attempting to draw with an unregistered colour!");
+	/**
+	 * The blocking implementation of ClientConnection.
+	 * Messages are added to a bounded queue and written to the socket by a writer task.
+	 */
+	private class Connection implements ClientConnection {
+		private final OutputStream output;
+		private final OutboundQueue<byte[]> outboundQueue;
+		private final Future<?> writer;
+
+		// Only changed by the reading thread before the client joins a room, so no other thread sends to it yet
+		private volatile boolean binary = false;
+
+		Connection(OutputStream output) {
+			this.output = output;
+			outboundQueue = new OutboundQueue<>(config.getOutboundQueueCapacity(), config.getSlowClientTimeoutMs());
+			writer = executor.submit(this::writeMessages);
 		}
 
-		server.sendMessageExcluding(NetworkMessage.addDrawMessageHeader(data), clientID);
-	}
-
-	private void processCanvasRequest(String data) {
-		int canvasID = Integer.parseInt(data);
-
-		boolean success = server.acquireCanvasForDrawing(clientID, canvasID);
+		private void writeMessages() {
+			SocketTuning tuning = config.getSocketTuning();
+			// The System.nanoTime the first message since the last flush was written, or -1 if everything is flushed
+			long unflushedSince = -1;
 
-		server.sendMessage(NetworkMessage.addCanvasRequestHeader(Boolean.toString(success)), clientID);
-	}
-
-	private void processCanvasRelease() {
-		server.releaseAcquiredCanvas(clientID);
-	}
-
-	private void processColorRequest(String data) {
-		int colorHash = Integer.parseInt(data);
-
-		boolean success = server.registerColor(clientID, colorHash);
-		server.sendMessage(NetworkMessage.addColorRequestHeader(Boolean.toString(success)), clientID);
-	}
-
-	private void processLockMessage(String data) {
-		int canvasID = Integer.parseInt(data);
-		server.lockCanvas(canvasID);
-	}
-
-	private void processCanvasClearMessage(String data) {
-		server.sendMessage(NetworkMessage.addCanvasClearRequestHeader(data));
-	}
-
-	private void processCanvasOwnMessage(String data) {
-		String id = data.split("/", 2)[0];
-		String stringColor = data.split("/", 2)[1];
-		Color color = Color.valueOf(stringColor);
-
-		server.sendMessage(NetworkMessage.addCanvasOwnRequestHeader(id, color));
-	}
-
-	/*This method calls the method to store the score of the user in a hashmap and if game ended calls the method
-	  to check the winner
-	 */
-	private void processCalculateScoreRequest(String data) {
-		String stringScore = data.split("/")[0];
-		String stringColor = data.split("/")[1];
-
-		Color color = Color.valueOf(stringColor);
-		int score = Integer.parseInt(stringScore);
-		boolean allCanvasColored = server.setScore(color, score);
-
-		//if every canvas is coloured then check winner
-		if (allCanvasColored) {
-			// passing the information to clients after checking results i.e. if player won a game or there is a tie
-			server.sendMessage(NetworkMessage.generateScoresAndGameResults(Integer.toString(server.getWinnerScore()), server.getWinningColor()));
+			try {
+				// It is very intentional to not leave this while loop unless an exception occurs.
+				//noinspection InfiniteLoopStatement
+				while(true) {
+					byte[] message;
+					if(unflushedSince == -1) {
+						message = outboundQueue.take();
+					}
+					else {
+						// The flush policy decides how many messages are written to the socket at once
+						long delay = tuning.getFlushDelayNanos(outboundQueue.peek() == null, unflushedSince, System.nanoTime());
+						if(delay == 0) {
+							output.flush();
+							unflushedSince = -1;
+							continue;
+						}
+
+						// Either write the next queued message or wait for one to join the flush
+						message = delay == -1 ? outboundQueue.poll() : outboundQueue.poll(delay, TimeUnit.NANOSECONDS);
+						if(message == null) {
+							continue;
+						}
+					}
+
+					output.write(message);
+					if(unflushedSince == -1) {
+						unflushedSince = System.nanoTime();
+					}
+				}
+			}
+			catch (InterruptedException | IOException ignored) {
+				// The client disconnected
+			}
 		}
-	}
 
-	private void processPlayerJoinMessage(String data) {
-		String[] fields = data.split("/");
-		player = new LobbyPlayer(Color.valueOf(fields[0]), fields[1]);
-		String message = NetworkMessage.addLobbyPlayerJoinHeader(data);
+		void stopWriter() {
+			writer.cancel(true);
+		}
 
+		@Override
+		public void send(ServerMessage message) {
+			if(!outboundQueue.offer(binary ? message.getFrame() : message.getTextLine(), message.isDrawing())) {
+				System.out.println("Disconnecting slow client (" + getRemoteAddress() + ")");
+				close();
+			}
+		}
 
-		// Send message to self, then send history to self, then add to history, then send to everyone else
-		// A message must always be added to history before being sent to everyone
-		// this prevents someone from joining at the perfect time and missing the message since it was sent to everyone (they didn't join yet)
-		// then they asked for history and got it (message wasn't in history) then finally the message got added to history but they missed it.
-		// The self entry needs to be the first one the new player gets so it needs to be sent before history leading to this setup.
-		server.sendMessage(message, clientID);
-		server.sendLobbyMessageHistory(clientID);
-		server.addLobbyMessageToList(message);
-		server.sendMessageExcluding(message, clientID);
+		@Override
+		public void useBinaryProtocol() {
+			binary = true;
+		}
 
-		server.lobbyPlayerJoined(clientID);
-	}
+		/**
+		 * Closes the socket. The read loop then fails with a SocketException and the client is removed as normal.
+		 */
+		@Override
+		public void close() {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
 
-	private void processPlayerReadyMessage(String data) {
-		server.lobbyPlayerReady(clientID, Boolean.parseBoolean(data.split("/")[1]));
-		String message = NetworkMessage.addLobbyPlayerReadyHeader(data);
-		server.addLobbyMessageToList(message);
-		server.sendMessage(message);
+		@Override
+		public String getRemoteAddress() {
+			return socket.getInetAddress().toString() + ":" + socket.getPort();
+		}
 	}
 
 }
-
-
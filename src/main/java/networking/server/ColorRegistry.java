@@ -0,0 +1,171 @@
+package networking.server;
+
+import networking.ColorPalette;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A palette of the colours registered in a room and the client each of them is registered to.
+ * <p>
+ * A colour gets a palette index when it is registered and keeps it while it is in use: while a client owns it, and
+ * for as long as the room exists once a canvas has been claimed with it, since the scores and results refer to it by
+ * index. The index of a colour that is no longer in use is given to the next new colour registered, so colours that
+ * were tried and given up don't use up the palette. Every client is sent the new colour of an index before it is used.
+ * <p>
+ * The colours and their owners are stored in arrays indexed by palette index. Checking a colour is lock-free, only
+ * registering one takes the registry's lock so two colours are never given the same index.
+ * Colours are identified by their 8 bit RGBA value, see BinaryProtocol.encodeColor.
+ * All methods are thread-safe and can be called by any thread without worrying about concurrency.
+ */
+class ColorRegistry {
+
+	// The value stored for an index that hasn't been given to a colour yet
+	private static final long NO_ENTRY = 0;
+	// Set in every entry so the colour with an RGBA value of 0 doesn't look like NO_ENTRY
+	private static final long ENTRY_PRESENT = 1L << 32;
+	// Set once a canvas is claimed with the colour. Its index is never given to another colour
+	private static final long ENTRY_PINNED = 1L << 33;
+	// The value stored for a colour that no client has registered. ClientIDs are never 0.
+	private static final int NO_OWNER = 0;
+
+	// ENTRY_PRESENT | the flags and RGBA value of each colour, indexed by palette index. Filled from index 0 upwards
+	private final AtomicLongArray colors;
+	// The clientID of the client each colour is registered to, indexed by palette index
+	private final AtomicIntegerArray owners;
+	// The palette index of the colour of each client. The format is: ClientID, palette index
+	private final ConcurrentHashMap<Integer, Integer> clientColors;
+
+	// Guards the index of each colour. Held while registering. A ReentrantLock so it doesn't pin a virtual thread
+	private final ReentrantLock lock = new ReentrantLock();
+	// The palette index of each colour in colors. The format is: RGBA value, palette index
+	private final Map<Integer, Integer> indices;
+	// The number of indices that have been given to a colour. Written after the entry so readers see it
+	private volatile int size = 0;
+
+	ColorRegistry() {
+		colors = new AtomicLongArray(ColorPalette.MAX_COLORS);
+		owners = new AtomicIntegerArray(ColorPalette.MAX_COLORS);
+		clientColors = new ConcurrentHashMap<>();
+		indices = new HashMap<>();
+	}
+
+	/**
+	 * Attempts to register the colour to the client. A client only has one colour so any colour previously registered
+	 * by the client is released.
+	 * @param clientID The ID of the client
+	 * @param rgba The 8 bit RGBA value of the colour
+	 * @return The palette index of the colour, or ColorPalette.NO_COLOR if it is already registered or every index is
+	 * in use
+	 */
+	int register(int clientID, int rgba) {
+		lock.lock();
+		try {
+			Integer index = indices.get(rgba);
+			if(index == null) {
+				index = assignIndex(rgba);
+			}
+			// Only registering sets an owner, so a new index is always free
+			if(index == ColorPalette.NO_COLOR || !owners.compareAndSet(index, NO_OWNER, clientID)) {
+				return ColorPalette.NO_COLOR;
+			}
+
+			Integer previousColor = clientColors.put(clientID, index);
+			if(previousColor != null) {
+				owners.compareAndSet(previousColor, clientID, NO_OWNER);
+			}
+
+			return index;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gives a colour the lowest index that isn't in use. Must be called with the lock held
+	 * @param rgba The 8 bit RGBA value of the colour
+	 * @return The palette index, or ColorPalette.NO_COLOR if every index is in use
+	 */
+	private int assignIndex(int rgba) {
+		long entry = ENTRY_PRESENT | (rgba & 0xFFFFFFFFL);
+		for(int index = 0; index < ColorPalette.MAX_COLORS; index++) {
+			long current = colors.get(index);
+			if(current == NO_ENTRY) {
+				colors.set(index, entry);
+				size = index + 1;
+			}
+			else if((current & ENTRY_PINNED) == 0 && owners.get(index) == NO_OWNER) {
+				indices.remove((int) current);
+				colors.set(index, entry);
+			}
+			else {
+				continue;
+			}
+
+			indices.put(rgba, index);
+			return index;
+		}
+
+		return ColorPalette.NO_COLOR;
+	}
+
+	/**
+	 * Keeps the colour's palette index for as long as the room exists, even once no client owns the colour.
+	 * Called when a canvas is claimed with it.
+	 * @param colorIndex The palette index of a registered colour
+	 */
+	void pin(int colorIndex) {
+		colors.getAndUpdate(colorIndex, entry -> entry | ENTRY_PINNED);
+	}
+
+	/**
+	 * @param clientID The ID of the client
+	 * @param colorIndex The palette index of the colour
+	 * @return True if the colour is registered to the client
+	 */
+	boolean isRegisteredTo(int clientID, int colorIndex) {
+		return colorIndex >= 0 && colorIndex < ColorPalette.MAX_COLORS && owners.get(colorIndex) == clientID;
+	}
+
+	/**
+	 * @param clientID The ID of the client
+	 * @return The palette index of the colour registered by the client, or ColorPalette.NO_COLOR if the client hasn't
+	 * registered a colour
+	 */
+	int getColorIndex(int clientID) {
+		Integer colorIndex = clientColors.get(clientID);
+		return colorIndex == null ? ColorPalette.NO_COLOR : colorIndex;
+	}
+
+	/**
+	 * @param colorIndex The palette index of a colour
+	 * @return The 8 bit RGBA value of the colour
+	 */
+	int getColorRGBA(int colorIndex) {
+		return (int) colors.get(colorIndex);
+	}
+
+	/**
+	 * @return The number of indices that have been given to a colour. They are 0 to size() - 1
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Releases the colour registered by the client. Does nothing if the client hasn't registered a colour.
+	 * The colour keeps its palette index until the index is given to another colour.
+	 * @param clientID The ID of the client
+	 */
+	void release(int clientID) {
+		Integer colorIndex = clientColors.remove(clientID);
+		if(colorIndex != null) {
+			owners.compareAndSet(colorIndex, clientID, NO_OWNER);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package networking.server;
+
+import com.example.javafxtest.BoardGeometry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A singleton registry of the game rooms hosted by this server process.
+ * <p>
+ * Each room is an independent game with its own ServerData (canvases, colours, scores and lobby).
+ * Rooms are created the first time their name is joined. A room is removed once its game starts or every client
+ * has left it, after which joining the same name creates a new room.
+ * <p>
+ * All methods are thread-safe and can be called by any thread without worrying about concurrency.
+ */
+class GameRooms {
+
+	// The room clients are placed in if they never send a ROOM_JOIN message
+	static final String DEFAULT_ROOM = "";
+
+	private static final GameRooms instance = new GameRooms();
+
+	// The rooms that can be joined. The format is: Room name, Room data
+	private final ConcurrentHashMap<String, ServerData> rooms;
+
+	private final AtomicInteger nextClientID;
+
+	// The number of times per second rooms send their buffered draw messages. 0 if draws are sent immediately
+	private volatile int tickRate = 0;
+	// Runs the ticks of every room. Created the first time a tick rate is set
+	private ScheduledExecutorService ticker = null;
+
+	// The board of rooms created from now on
+	private volatile BoardGeometry board = BoardGeometry.DEFAULT;
+
+	public static GameRooms getInstance() {
+		return instance;
+	}
+
+	private GameRooms() {
+		rooms = new ConcurrentHashMap<>();
+		nextClientID = new AtomicInteger(1);
+	}
+
+	/**
+	 * Gets a new unique ID for a connecting client. IDs start at 1 and are never reused.
+	 * @return The clientID
+	 */
+	public int nextClientID() {
+		return nextClientID.getAndIncrement();
+	}
+
+	/**
+	 * Sets the tick rate used by rooms created from now on. See ServerData.sendDraw
+	 * @param tickRate The number of ticks per second, or 0 to send draw messages as soon as they arrive
+	 */
+	public synchronized void setTickRate(int tickRate) {
+		if(tickRate > 0 && ticker == null) {
+			ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Server Tick Thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		this.tickRate = tickRate;
+	}
+
+	/**
+	 * Sets the board used by rooms created from now on. Rooms that already exist keep their board.
+	 * @param board The geometry of the board
+	 */
+	public void setBoard(BoardGeometry board) {
+		this.board = board;
+	}
+
+	private synchronized ServerData createRoom(String roomName) {
+		ServerData room = new ServerData(roomName, board);
+		if(tickRate > 0) {
+			room.startTicks(ticker, tickRate);
+		}
+
+		return room;
+	}
+
+	/**
+	 * Adds the client to the room with the given name, creating the room if it doesn't exist.
+	 * @param roomName The name of the room
+	 * @param clientID The ID of the client
+	 * @param connection The client's connection
+	 * @return The room the client joined
+	 */
+	public ServerData joinRoom(String roomName, int clientID, ClientConnection connection) {
+		while(true) {
+			ServerData room = rooms.computeIfAbsent(roomName, this::createRoom);
+			if(room.addClient(clientID, connection)) {
+				return room;
+			}
+
+			// The room closed after it was looked up. Make sure it's gone and try again with a new room
+			rooms.remove(roomName, room);
+		}
+	}
+
+	/**
+	 * Removes a closed room so that its name can be used again.
+	 * @param room The room being removed
+	 */
+	void removeRoom(ServerData room) {
+		rooms.remove(room.getRoomName(), room);
+	}
+
+	/**
+	 * @return The number of rooms that can currently be joined
+	 */
+	public int getOpenRoomCount() {
+		return rooms.size();
+	}
+}
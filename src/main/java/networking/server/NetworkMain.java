@@ -7,9 +7,13 @@ import java.util.*;
 
 public class NetworkMain {
 
+	/**
+	 * Starts the server. See ServerConfig.fromArgs for the supported options.
+	 * e.g. --mode=nio --event-loops=4
+	 */
 	public static void main(String[] args) throws IOException {
 		Scanner in = new Scanner(System.in);
-		NetworkServer server = new NetworkServer(7070);
+		NetworkServer server = new NetworkServer(ServerConfig.fromArgs(args));
 		server.setDaemon(true);
 		server.setName("Server");
 		server.start();
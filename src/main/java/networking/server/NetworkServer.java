@@ -2,46 +2,101 @@ package networking.server;
 
 import java.net.*;
 import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class NetworkServer extends Thread {
-	private final static int PORT = 7070;
-	private final int port;
+	private final ServerConfig config;
 
+	public NetworkServer(ServerConfig config) {
+		this.config = config;
+	}
 	public NetworkServer(int port) {
-		this.port = port;	
+		this(new ServerConfig(port));
 	}
 	public NetworkServer() {
-		port = PORT;
+		this(new ServerConfig());
 	}
-	
+
 	public void run() {
-		System.out.println("Starting Server");
+		System.out.println("Starting Server (" + config.getMode() + " mode)");
+		GameRooms.getInstance().setTickRate(config.getTickRate());
+		GameRooms.getInstance().setBoard(config.getBoard());
+
+		switch(config.getMode()) {
+			case NIO:
+				runNio();
+				break;
+			case VIRTUAL:
+				runBlocking(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Client Thread ", 0).factory()));
+				break;
+			default:
+				runBlocking(Executors.newThreadPerTaskExecutor(Thread.ofPlatform().daemon().name("Client Thread ", 0).factory()));
+				break;
+		}
+	}
 
+	/**
+	 * Accepts connections on this thread and runs a blocking ClientThread for each one on the given executor.
+	 * The executor is never shut down since the clients keep being served after the server socket closes.
+	 * @param clientExecutor The executor that runs the ClientThreads
+	 */
+	private void runBlocking(ExecutorService clientExecutor) {
+		try(ServerSocket serverSocket = new ServerSocket()){
+			// Accepted sockets inherit the receive buffer size, which has to be set before they connect
+			config.getSocketTuning().apply(serverSocket);
+			serverSocket.bind(new InetSocketAddress(config.getPort()));
+			System.out.println("Server is listening on port: " + config.getPort());
 
-		try(ServerSocket serverSocket = new ServerSocket(port)){
-			ServerData.getInstance().setServerSocket(serverSocket);
-			System.out.println("Server is listening on port: " + port);
-			
 			while(true) {
 				Socket socket = serverSocket.accept();
+				config.getSocketTuning().apply(socket);
 				System.out.println("New connection from: " + socket.getInetAddress().toString() + ":" + socket.getPort());
-				
-				ClientThread clientThread = new ClientThread(socket);
-				clientThread.setDaemon(true);
-				clientThread.setName("Client Thread: " + socket.getInetAddress().toString() + ":" + socket.getPort());
-				clientThread.start();
+
+				clientExecutor.execute(new ClientThread(socket, clientExecutor, config));
 			}
-			
+
 		}
-		// This will occur if the server socket is closed. This happens when the game starts
+		// This will occur if the server socket is closed
 		catch(SocketException ex) {
-			System.out.println("Closing Server to new clients");
+			System.out.println("Server socket closed");
 		}
 		catch(IOException ex) {
 			System.out.println("Exception on Server: " + ex.getMessage());
 			ex.printStackTrace();
 		}
+	}
 
+	/**
+	 * Accepts connections on this thread and hands each one to one of the shared nio event loops.
+	 * No thread is created per client in this mode.
+	 */
+	private void runNio() {
+		try(ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			// Accepted sockets inherit the receive buffer size, which has to be set before they connect
+			config.getSocketTuning().apply(serverChannel.socket());
+			serverChannel.bind(new InetSocketAddress(config.getPort()));
+			System.out.println("Server is listening on port: " + config.getPort());
+
+			while(true) {
+				SocketChannel channel = serverChannel.accept();
+				config.getSocketTuning().apply(channel.socket());
+				System.out.println("New connection from: " + channel.socket().getInetAddress().toString() + ":" + channel.socket().getPort());
+
+				NioEventLoop.next(config.getEventLoopThreads()).register(channel, config);
+			}
+		}
+		// This will occur if the server socket is closed
+		catch(ClosedChannelException ex) {
+			System.out.println("Server socket closed");
+		}
+		catch(IOException ex) {
+			System.out.println("Exception on Server: " + ex.getMessage());
+			ex.printStackTrace();
+		}
 	}
-	
+
 }
@@ -0,0 +1,328 @@
+package networking.server;
+
+import networking.BinaryProtocol;
+import networking.SocketTuning;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The nio implementation of ClientConnection.
+ * <p>
+ * All reads and writes happen on the owning NioEventLoop. Received bytes are split into lines, or into frames once the
+ * client switches to the binary protocol, and each one is passed to the client's ClientSession, so messages keep the
+ * same format as the blocking server.
+ */
+class NioClientConnection implements ClientConnection {
+
+	private static final int READ_BUFFER_SIZE = 8192;
+	// The most queued messages taken out of the queue to be written at once
+	private static final int MAX_WRITE_BATCH = 64;
+
+	private final SocketChannel channel;
+	private final NioEventLoop loop;
+	private final SocketTuning tuning;
+	private final String remoteAddress;
+
+	private SelectionKey key;
+	private ClientSession session;
+	private boolean closed = false;
+
+	private final ByteBuffer readBuffer;
+	// Holds the bytes of a line or frame that hasn't been fully received yet
+	private byte[] lineBuffer;
+	private int lineLength;
+
+	// Only changed on the loop thread, before the client joins a room
+	private volatile boolean binary = false;
+	// The length of the frame being received, or -1 while its length prefix is being received
+	private int frameLength = -1;
+
+	// Encoded messages waiting to be written to the channel. Written by any thread, drained by the loop thread.
+	// The arrays are shared with every other recipient of the message and are never modified.
+	private final OutboundQueue<byte[]> writeQueue;
+	// The messages taken from the queue that are being written. Only used on the loop thread
+	private final byte[][] writing = new byte[MAX_WRITE_BATCH][];
+	private int writingOffset = 0;
+	private int writingCount = 0;
+	// The number of bytes of writing[writingOffset] that have already been written
+	private int headWritten = 0;
+	// True while a write task is waiting to run on the loop, so a burst of messages only schedules one task
+	private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+	private final Runnable writeTask = this::runScheduledWrite;
+
+	NioClientConnection(SocketChannel channel, NioEventLoop loop, ServerConfig config) {
+		this.channel = channel;
+		this.loop = loop;
+		tuning = config.getSocketTuning();
+		remoteAddress = channel.socket().getInetAddress().toString() + ":" + channel.socket().getPort();
+		readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		lineBuffer = new byte[256];
+		lineLength = 0;
+		writeQueue = new OutboundQueue<>(config.getOutboundQueueCapacity(), config.getSlowClientTimeoutMs());
+	}
+
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	/**
+	 * Called by the loop once the channel is registered.
+	 */
+	void opened() {
+		session = new ClientSession(this);
+	}
+
+	/**
+	 * Reads everything currently available on the channel and processes any complete lines.
+	 */
+	void handleRead() {
+		try {
+			int read;
+			while((read = channel.read(readBuffer)) > 0) {
+				readBuffer.flip();
+				processReceivedBytes();
+				readBuffer.clear();
+
+				if(closed) {
+					return;
+				}
+			}
+
+			// The client closed the connection
+			if(read == -1) {
+				close();
+			}
+		}
+		// An IOException here should mean that the client disconnected
+		catch (IOException ex) {
+			close();
+		}
+	}
+
+	private void processReceivedBytes() throws IOException {
+		while(readBuffer.hasRemaining() && !closed) {
+			// The protocol can change after any line, so it is checked before every byte
+			if(binary) {
+				processReceivedFrameBytes();
+				continue;
+			}
+
+			byte b = readBuffer.get();
+
+			if(b == '\n') {
+				// Strip the '\r' of a "\r\n" line ending, the same way BufferedReader.readLine does
+				int length = lineLength > 0 && lineBuffer[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+				String line = new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+				lineLength = 0;
+				processLine(line);
+			}
+			else {
+				if(lineLength == BinaryProtocol.MAX_LINE_LENGTH) {
+					throw new IOException("Line too long");
+				}
+				if(lineLength == lineBuffer.length) {
+					lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+				}
+				lineBuffer[lineLength++] = b;
+			}
+		}
+	}
+
+	/**
+	 * Copies as much of the current frame out of the read buffer as is available and processes the frame once it is
+	 * complete.
+	 */
+	private void processReceivedFrameBytes() throws IOException {
+		if(frameLength == -1) {
+			int count = Math.min(Integer.BYTES - lineLength, readBuffer.remaining());
+			readBuffer.get(lineBuffer, lineLength, count);
+			lineLength += count;
+
+			if(lineLength < Integer.BYTES) {
+				return;
+			}
+
+			frameLength = ByteBuffer.wrap(lineBuffer, 0, Integer.BYTES).getInt();
+			BinaryProtocol.checkFrameLength(frameLength);
+			lineLength = 0;
+			if(lineBuffer.length < frameLength) {
+				lineBuffer = Arrays.copyOf(lineBuffer, frameLength);
+			}
+		}
+
+		int count = Math.min(frameLength - lineLength, readBuffer.remaining());
+		readBuffer.get(lineBuffer, lineLength, count);
+		lineLength += count;
+
+		if(lineLength == frameLength) {
+			ByteBuffer frame = ByteBuffer.wrap(lineBuffer, 0, frameLength);
+			lineLength = 0;
+			frameLength = -1;
+			processFrame(frame);
+		}
+	}
+
+	private void processFrame(ByteBuffer frame) {
+		try {
+			session.processFrame(frame);
+		}
+		// An exception here would otherwise stop the event loop and every other client it serves.
+		// Only the offending client is disconnected instead.
+		catch (RuntimeException ex) {
+			System.out.println("Exception on Server: " + ex.getMessage());
+			ex.printStackTrace();
+			close();
+		}
+	}
+
+	private void processLine(String line) {
+		try {
+			session.processMessage(line);
+		}
+		// An exception here would otherwise stop the event loop and every other client it serves.
+		// Only the offending client is disconnected instead.
+		catch (RuntimeException ex) {
+			System.out.println("Exception on Server: " + ex.getMessage());
+			ex.printStackTrace();
+			close();
+		}
+	}
+
+	private void runScheduledWrite() {
+		// Cleared before writing so a message queued during the write schedules another task
+		writeScheduled.set(false);
+		handleWrite();
+	}
+
+	/**
+	 * Writes as much of the queued data as the channel accepts without blocking.
+	 * Queued messages are copied into the loop's direct write buffer so several of them go out with one write,
+	 * unless the flush policy is to write every message on its own.
+	 * If anything is left the loop is asked to call this again once the channel is writable.
+	 */
+	void handleWrite() {
+		if(closed) {
+			return;
+		}
+
+		try {
+			while(true) {
+				if(writingOffset == writingCount) {
+					writingOffset = 0;
+					writingCount = 0;
+
+					byte[] message;
+					while(writingCount < MAX_WRITE_BATCH && (message = writeQueue.poll()) != null) {
+						writing[writingCount++] = message;
+					}
+
+					if(writingCount == 0) {
+						key.interestOps(SelectionKey.OP_READ);
+						return;
+					}
+				}
+
+				ByteBuffer buffer = loop.getWriteBuffer();
+				buffer.clear();
+				int skip = headWritten;
+				int end = tuning.getFlushPolicy() == SocketTuning.FlushPolicy.MESSAGE ? writingOffset + 1 : writingCount;
+				for(int i = writingOffset; i < end && buffer.hasRemaining(); i++) {
+					int length = Math.min(writing[i].length - skip, buffer.remaining());
+					buffer.put(writing[i], skip, length);
+					skip = 0;
+				}
+				buffer.flip();
+
+				int written = channel.write(buffer);
+
+				// Move past every message that was fully written
+				while(written > 0) {
+					int left = writing[writingOffset].length - headWritten;
+					if(written < left) {
+						headWritten += written;
+						break;
+					}
+
+					written -= left;
+					headWritten = 0;
+					writing[writingOffset++] = null;
+				}
+
+				if(buffer.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+		}
+		catch (IOException ex) {
+			close();
+		}
+	}
+
+	@Override
+	public void send(ServerMessage message) {
+		// The encoded bytes are shared with every other recipient of the message
+		if(!writeQueue.offer(binary ? message.getFrame() : message.getTextLine(), message.isDrawing())) {
+			System.out.println("Disconnecting slow client (" + remoteAddress + ")");
+			close();
+			return;
+		}
+
+		if(writeScheduled.compareAndSet(false, true)) {
+			// With the window policy the messages queued during the window are written together at its end
+			if(tuning.getFlushPolicy() == SocketTuning.FlushPolicy.WINDOW) {
+				loop.scheduleAfter(writeTask, TimeUnit.MILLISECONDS.toNanos(tuning.getFlushWindowMs()));
+			}
+			else {
+				loop.execute(writeTask);
+			}
+		}
+	}
+
+	@Override
+	public void useBinaryProtocol() {
+		binary = true;
+	}
+
+	/**
+	 * Closes the connection and removes the client from the server.
+	 * The cleanup always runs as a separate loop task since the caller may be in the middle of
+	 * iterating over the server's clients.
+	 */
+	@Override
+	public void close() {
+		loop.schedule(() -> {
+			if(closed) {
+				return;
+			}
+			closed = true;
+
+			if(key != null) {
+				key.cancel();
+			}
+
+			try {
+				channel.close();
+			}
+			catch (IOException ex) {
+				System.out.println("Exception on Server: " + ex.getMessage());
+			}
+
+			if(session != null) {
+				session.disconnected();
+			}
+		});
+	}
+
+	@Override
+	public String getRemoteAddress() {
+		return remoteAddress;
+	}
+}
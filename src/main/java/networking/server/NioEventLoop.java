@@ -0,0 +1,167 @@
+package networking.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single nio event loop. Each loop owns one Selector and serves every connection registered to it on one thread,
+ * so a few of these replace the one-thread-per-client model of ClientThread.
+ * <p>
+ * Selector state is only ever touched on the loop thread. Other threads hand work to the loop with execute.
+ */
+class NioEventLoop extends Thread {
+
+	// The loops are shared by the whole process. Restarting the NetworkServer must not start a new set of threads.
+	private static NioEventLoop[] loops = null;
+	private static final AtomicInteger nextLoop = new AtomicInteger();
+	// Waits out the delay of the tasks passed to scheduleAfter for every loop, then hands them to their loop
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Nio Timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// The largest amount of data written to a channel with a single write
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks;
+	// Shared by every connection served by this loop. Only used on the loop thread
+	private final ByteBuffer writeBuffer;
+
+	private NioEventLoop(int index) throws IOException {
+		selector = Selector.open();
+		tasks = new ConcurrentLinkedQueue<>();
+		writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+		setName("Nio Event Loop " + index);
+		setDaemon(true);
+	}
+
+	/**
+	 * Gets the event loop that should serve the next connection. Loops are handed out round-robin.
+	 * The loops are started the first time this is called.
+	 * @param loopCount The number of loops to create if they haven't been created yet
+	 * @return The event loop
+	 */
+	static synchronized NioEventLoop next(int loopCount) throws IOException {
+		if(loops == null) {
+			loops = new NioEventLoop[loopCount];
+			for(int i = 0; i < loopCount; i++) {
+				loops[i] = new NioEventLoop(i);
+				loops[i].start();
+			}
+		}
+
+		return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+	}
+
+	/**
+	 * Registers a newly accepted channel with this loop. This method can be called from any thread.
+	 * @param channel The accepted channel
+	 */
+	void register(SocketChannel channel, ServerConfig config) {
+		execute(() -> {
+			NioClientConnection connection = new NioClientConnection(channel, this, config);
+			try {
+				channel.configureBlocking(false);
+				connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+			}
+			catch (IOException ex) {
+				System.out.println("Exception on Server: " + ex.getMessage());
+				connection.close();
+				return;
+			}
+
+			connection.opened();
+		});
+	}
+
+	/**
+	 * Runs the task on the loop thread. If called from the loop thread the task runs immediately.
+	 * @param task The task to run
+	 */
+	void execute(Runnable task) {
+		if(Thread.currentThread() == this) {
+			task.run();
+			return;
+		}
+
+		schedule(task);
+	}
+
+	/**
+	 * Queues the task to run on the loop thread, even if called from the loop thread.
+	 * @param task The task to run
+	 */
+	void schedule(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Queues the task to run on the loop thread once the delay has passed. This method can be called from any thread.
+	 * @param task The task to run
+	 * @param delayNanos The delay in nanoseconds
+	 */
+	void scheduleAfter(Runnable task, long delayNanos) {
+		timer.schedule(() -> schedule(task), delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the direct buffer connections copy their outgoing messages into before writing them to their channel.
+	 * This must only be called on the loop thread.
+	 * @return The buffer
+	 */
+	ByteBuffer getWriteBuffer() {
+		return writeBuffer;
+	}
+
+	@Override
+	public void run() {
+		// It is very intentional to never leave this loop. The loop serves clients for the lifetime of the process.
+		//noinspection InfiniteLoopStatement
+		while(true) {
+			try {
+				selector.select();
+			}
+			catch (IOException ex) {
+				System.out.println("Exception on Server: " + ex.getMessage());
+				ex.printStackTrace();
+				continue;
+			}
+
+			Runnable task;
+			while((task = tasks.poll()) != null) {
+				task.run();
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while(keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+
+				NioClientConnection connection = (NioClientConnection) key.attachment();
+				if(!key.isValid()) {
+					continue;
+				}
+
+				if(key.isReadable()) {
+					connection.handleRead();
+				}
+				if(key.isValid() && key.isWritable()) {
+					connection.handleWrite();
+				}
+			}
+		}
+	}
+}
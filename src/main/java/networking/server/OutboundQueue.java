@@ -0,0 +1,96 @@
+package networking.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded queue of messages waiting to be written to a single client.
+ * <p>
+ * Senders never block. If the client reads slower than messages are produced the queue fills up. Once it is full,
+ * new drawings are dropped: the client misses part of a stroke but stays in sync otherwise. Every other message,
+ * such as a response, PALETTE, CANVAS_OWN or CANVAS_CLEAR, is still queued in space reserved for them, since a client
+ * that misses one of them would stay out of sync. A client that has also used up the reserved space is disconnected
+ * straight away. Once the queue has stayed full for longer than the configured timeout the client is considered too
+ * slow and is disconnected too.
+ * @param <T> The type of the queued messages
+ */
+class OutboundQueue<T> {
+	// The space kept for messages other than drawings once the queue is full
+	static final int RESERVED_CAPACITY = 64;
+
+	private final BlockingQueue<T> queue;
+	// The number of messages after which drawings are dropped
+	private final int capacity;
+	private final long slowClientTimeoutNanos;
+
+	// The time the queue was first found full, or -1 if it wasn't full at the last offer
+	private volatile long fullSince = -1;
+
+	OutboundQueue(int capacity, long slowClientTimeoutMs) {
+		queue = new ArrayBlockingQueue<>(capacity + RESERVED_CAPACITY);
+		this.capacity = capacity;
+		slowClientTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(slowClientTimeoutMs);
+	}
+
+	/**
+	 * Adds a message to the queue without blocking.
+	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
+	 * @param message The message being queued
+	 * @param drawing True if the message only carries drawings, which are dropped while the queue is full
+	 * @return False if the client should be disconnected: the queue has been full for longer than the slow client
+	 * timeout, or the message isn't a drawing and there is no space left for it. True otherwise
+	 */
+	boolean offer(T message, boolean drawing) {
+		if(queue.size() < capacity) {
+			fullSince = -1;
+		}
+		else {
+			long now = System.nanoTime();
+			if(fullSince == -1) {
+				fullSince = now;
+			}
+			else if(now - fullSince > slowClientTimeoutNanos) {
+				return false;
+			}
+
+			if(drawing) {
+				return true;
+			}
+		}
+
+		return queue.offer(message);
+	}
+
+	/**
+	 * Waits until a message is available and removes it from the queue.
+	 * @return The next message
+	 */
+	T take() throws InterruptedException {
+		return queue.take();
+	}
+
+	/**
+	 * @return The next message without removing it, or null if the queue is empty
+	 */
+	T peek() {
+		return queue.peek();
+	}
+
+	/**
+	 * @return The next message, or null if the queue is empty
+	 */
+	T poll() {
+		return queue.poll();
+	}
+
+	/**
+	 * Waits until a message is available or the timeout passes and removes it from the queue.
+	 * @param timeout How long to wait
+	 * @param unit The unit of the timeout
+	 * @return The next message, or null if none arrived before the timeout
+	 */
+	T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.poll(timeout, unit);
+	}
+}
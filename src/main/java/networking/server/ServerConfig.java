@@ -0,0 +1,201 @@
+package networking.server;
+
+import com.example.javafxtest.BoardGeometry;
+import networking.SocketTuning;
+
+/**
+ * Startup options for the server.
+ * <p>
+ * Options are read from the command line by {@link #fromArgs(String[])} using the form --name=value.
+ * Any option that isn't given keeps its default value.
+ */
+public class ServerConfig {
+
+	/**
+	 * The I/O model used to serve connected clients.
+	 */
+	public enum Mode {
+		// One blocking ClientThread per connected client, each on its own platform thread
+		BLOCKING,
+		// One blocking ClientThread per connected client, each on its own virtual thread
+		VIRTUAL,
+		// A small fixed pool of java.nio Selector event loops shared by all clients
+		NIO
+	}
+
+	private static final int DEFAULT_PORT = 7070;
+
+	private int port = DEFAULT_PORT;
+	private Mode mode = Mode.BLOCKING;
+	private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+	private int outboundQueueCapacity = 1024;
+	private long slowClientTimeoutMs = 5000;
+	private int tickRate = 0;
+	private BoardGeometry board = BoardGeometry.DEFAULT;
+	private final SocketTuning socketTuning = new SocketTuning();
+
+	public ServerConfig() {
+	}
+
+	public ServerConfig(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Builds a config from command line arguments.
+	 * <p>
+	 * Supported options:
+	 *      --port=7070             The port the server listens on
+	 *      --mode=blocking|virtual|nio The I/O model used to serve clients
+	 *      --event-loops=N         The number of event loop threads used in nio mode. Defaults to one per core
+	 *      --outbound-queue=N      The number of messages that can be waiting to be sent to a single client before
+	 *                              drawings are dropped for it. Other messages are never dropped, see OutboundQueue
+	 *      --slow-client-timeout-ms=N  How long a client's outbound queue can stay full before it is disconnected
+	 *      --tick-rate=N           Buffer draw messages and send them N times per second. 0 (the default) sends
+	 *                              every draw message as soon as it arrives
+	 *      --board=COLUMNSxROWS    The number of canvases on the board of every room. Defaults to 8x8
+	 *      --canvas-size=N         The width and height of each canvas in pixels. Defaults to 100
+	 *      --flush=message|batch|window When the messages queued for a client are flushed to its socket. Defaults to batch
+	 *      --flush-window-ms=N     The longest a message waits to be flushed with the window policy. Defaults to 5
+	 *      --tcp-nodelay=true|false Disables Nagle's algorithm on every client socket. Defaults to true
+	 *      --send-buffer=N         The socket send buffer size in bytes. Defaults to the operating system's
+	 *      --receive-buffer=N      The socket receive buffer size in bytes. Defaults to the operating system's
+	 * @param args The command line arguments
+	 * @return The config described by the arguments
+	 */
+	public static ServerConfig fromArgs(String[] args) {
+		ServerConfig config = new ServerConfig();
+
+		for(String arg : args) {
+			if(!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Invalid server option: " + arg);
+			}
+
+			String name = arg.substring(2, arg.indexOf('='));
+			String value = arg.substring(arg.indexOf('=') + 1);
+
+			switch(name) {
+				case "port":
+					config.setPort(Integer.parseInt(value));
+					break;
+				case "mode":
+					config.setMode(Mode.valueOf(value.toUpperCase()));
+					break;
+				case "event-loops":
+					config.setEventLoopThreads(Integer.parseInt(value));
+					break;
+				case "outbound-queue":
+					config.setOutboundQueueCapacity(Integer.parseInt(value));
+					break;
+				case "slow-client-timeout-ms":
+					config.setSlowClientTimeoutMs(Long.parseLong(value));
+					break;
+				case "tick-rate":
+					config.setTickRate(Integer.parseInt(value));
+					break;
+				case "board":
+					BoardGeometry grid = BoardGeometry.fromString(value + "/" + config.getBoard().getCanvasSize());
+					config.setBoard(grid);
+					break;
+				case "canvas-size":
+					BoardGeometry board = config.getBoard();
+					config.setBoard(new BoardGeometry(board.getColumns(), board.getRows(), Integer.parseInt(value)));
+					break;
+				case "flush":
+					config.getSocketTuning().setFlushPolicy(SocketTuning.FlushPolicy.valueOf(value.toUpperCase()));
+					break;
+				case "flush-window-ms":
+					config.getSocketTuning().setFlushWindowMs(Long.parseLong(value));
+					break;
+				case "tcp-nodelay":
+					config.getSocketTuning().setTcpNoDelay(Boolean.parseBoolean(value));
+					break;
+				case "send-buffer":
+					config.getSocketTuning().setSendBufferSize(Integer.parseInt(value));
+					break;
+				case "receive-buffer":
+					config.getSocketTuning().setReceiveBufferSize(Integer.parseInt(value));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown server option: " + name);
+			}
+		}
+
+		return config;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	public int getEventLoopThreads() {
+		return eventLoopThreads;
+	}
+
+	public void setEventLoopThreads(int eventLoopThreads) {
+		if(eventLoopThreads < 1) {
+			throw new IllegalArgumentException("At least one event loop thread is required");
+		}
+
+		this.eventLoopThreads = eventLoopThreads;
+	}
+
+	public int getOutboundQueueCapacity() {
+		return outboundQueueCapacity;
+	}
+
+	public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+		if(outboundQueueCapacity < 1) {
+			throw new IllegalArgumentException("The outbound queue must hold at least one message");
+		}
+
+		this.outboundQueueCapacity = outboundQueueCapacity;
+	}
+
+	public long getSlowClientTimeoutMs() {
+		return slowClientTimeoutMs;
+	}
+
+	public void setSlowClientTimeoutMs(long slowClientTimeoutMs) {
+		this.slowClientTimeoutMs = slowClientTimeoutMs;
+	}
+
+	public int getTickRate() {
+		return tickRate;
+	}
+
+	public void setTickRate(int tickRate) {
+		if(tickRate < 0) {
+			throw new IllegalArgumentException("The tick rate can't be negative");
+		}
+
+		this.tickRate = tickRate;
+	}
+
+	public BoardGeometry getBoard() {
+		return board;
+	}
+
+	public void setBoard(BoardGeometry board) {
+		this.board = board;
+	}
+
+	/**
+	 * @return The flush policy and socket options used for every client connection
+	 */
+	public SocketTuning getSocketTuning() {
+		return socketTuning;
+	}
+}
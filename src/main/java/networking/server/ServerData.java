@@ -1,46 +1,60 @@
 package networking.server;
 
-import javafx.scene.paint.Color;
+import com.example.javafxtest.BoardGeometry;
+import com.example.javafxtest.CanvasCoverage;
+import networking.BinaryProtocol;
+import networking.ColorPalette;
 import networking.NetworkMessage;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A singleton class that contains all the data that needs to be shared across the different server threads
+ * A class that contains all the data of a single game room that needs to be shared across the different server threads.
+ * One server process can host many rooms at once, see GameRooms.
  * Accessing variables is not thread safe so manual synchronization is required.
  */
 class ServerData {
 
 	/**
-	 * Note: ClientID are the hashcode of the client's socket. Hashcodes are obtained by socket.HashCode()
+	 * Note: ClientIDs are assigned by GameRooms.nextClientID when a client connects. They are unique across all rooms.
 	 */
 
-	// The singleton instance of the class
-	private static ServerData instance = null;
+	// The name the room was created with
+	private final String roomName;
+	// The size of the board. Every client in the room is told about it when it joins
+	private final BoardGeometry board;
+
+	// Set once the game starts or every client has left. A closed room can't be joined.
+	private boolean closed = false;
+
+	// Guards all the data below. The thread-safe methods hold this lock instead of being synchronized.
+	// A virtual thread that blocks on a socket write inside a synchronized method pins its carrier thread,
+	// while blocking with a ReentrantLock held does not.
+	private final ReentrantLock lock = new ReentrantLock();
 
 	/**
-	 * A map to associate a given client with their PrintWriter output.
-	 * The format is: ClientID, Output.
+	 * A map to associate a given client with their connection.
+	 * The format is: ClientID, Connection.
 	 * An entry in this map will exist for all connected clients so this can be used to get the IDs of connected clients.
 	 */
-	private final Map<Integer, PrintWriter> clientOutputs;
+	private final Map<Integer, ClientConnection> clientOutputs;
 
-	// A map to associate a given client with a given color
-	// It maps the Socket hashcode to the color hashcode using the .HashCode method
-	private final Map<Integer, Integer> clientColors;
+	// The palette of the room and the colour registered by each client. It does not use the ServerData lock
+	private final ColorRegistry clientColors;
 
-	// A non-thread safe map containing all the canvases currently being used
-	// and the hashcode of the socket of the user.
-	// format is socket hashcode, canvasID
-	private final Map<Integer, Integer> canvasesInUse;
+	// The client drawing on each canvas and the locked canvases. Lock-free, it does not use the ServerData lock
+	private final CanvasTable canvases;
+	// The area of each canvas covered by strokes. Not thread-safe. A canvas is only changed by the thread serving the
+	// client drawing on it, the atomic release and acquire in CanvasTable hand it over to the next client's thread
+	private final CanvasCoverage coverage;
 
-	// A map to associate a given client with their score
-	private final Map<Color, Integer> clientScores;
-	private final Boolean[] isLocked;
+	// The score of each colour, indexed by palette index. A colour keeps its score after its client leaves
+	private final int[] clientScores;
 
 	// A list that contains the clientIDs of all players in the lobby
 	private final List<Integer> playersInLobby;
@@ -49,37 +63,81 @@ class ServerData {
 	// A list that contains all the lobby messages sent
 	private final List<String> lobbyMessagesList;
 
-	private ServerSocket serverSocket;
+	// Draw messages waiting for the next tick, grouped by canvas. Only used if the room runs with ticks
+	private final Map<Integer, List<PendingDraw>> pendingDraws;
+	// The periodic task that sends the pending draws. Null if draw messages are sent as soon as they arrive
+	private ScheduledFuture<?> tick = null;
 
-	public static ServerData getInstance() {
-		if(instance == null) {
-			instance = new ServerData();
-		}
-		
-		return instance;
+	ServerData(String roomName) {
+		this(roomName, BoardGeometry.DEFAULT);
 	}
-	
-	private ServerData() {
-		clientOutputs = new HashMap<>();
-		clientColors = new HashMap<>();
-		canvasesInUse = new HashMap<>();
-		clientScores = new HashMap<>();
+
+	ServerData(String roomName, BoardGeometry board) {
+		this.roomName = roomName;
+		this.board = board;
+		clientOutputs = new ConcurrentHashMap<>();
+		clientColors = new ColorRegistry();
+		canvases = new CanvasTable(board.getCanvasCount());
+		coverage = new CanvasCoverage(board.getCanvasCount(), board.getCanvasSize(), board.getCanvasSize());
+		clientScores = new int[ColorPalette.MAX_COLORS];
 		playersInLobby = new ArrayList<>();
 		readyPlayersInLobby = new ArrayList<>();
 		lobbyMessagesList =  new LinkedList<>();
+		pendingDraws = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Makes the room buffer draw messages and send them once per tick instead of as soon as they arrive.
+	 * The ticks stop once every client has left the room.
+	 * @param ticker The executor that runs the ticks
+	 * @param tickRate The number of ticks per second
+	 */
+	void startTicks(ScheduledExecutorService ticker, int tickRate) {
+		lock.lock();
+		try {
+			long period = TimeUnit.SECONDS.toNanos(1) / tickRate;
+			tick = ticker.scheduleAtFixedRate(this::flushDraws, period, period, TimeUnit.NANOSECONDS);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public String getRoomName() {
+		return roomName;
+	}
 
-		isLocked = new Boolean[64];
-		Arrays.fill(isLocked, false);
+	public BoardGeometry getBoard() {
+		return board;
 	}
 
 	/**
-	 * Adds a client to the server data.
+	 * Adds a client to the room. The client is sent the palette of the room before any other message from the room.
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
 	 * @param clientID The ID of the client
-	 * @param clientOutput The client's PrintWriter output
+	 * @param clientOutput The client's connection
+	 * @return True if the client was added, false if the room is closed because its game has started or everyone left
 	 */
-	public synchronized void addClient(int clientID, PrintWriter clientOutput) {
-		clientOutputs.put(clientID, clientOutput);
+	public boolean addClient(int clientID, ClientConnection clientOutput) {
+		lock.lock();
+		try {
+			if(closed) {
+				return false;
+			}
+
+			// Colours registered from now on are sent to the client by ClientSession along with everyone else. A colour
+			// registered while this runs may be sent twice, which the client ignores
+			clientOutputs.put(clientID, clientOutput);
+			int colorCount = clientColors.size();
+			for(int colorIndex = 0; colorIndex < colorCount; colorIndex++) {
+				String message = NetworkMessage.generatePaletteMessage(colorIndex, clientColors.getColorRGBA(colorIndex));
+				clientOutput.send(new ServerMessage(message));
+			}
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 
@@ -88,55 +146,37 @@ class ServerData {
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
 	 * @param clientID The ID of the client being removed
 	 */
-	public synchronized void removeClient(int clientID) {
-		clientColors.remove(clientID);
-		canvasesInUse.remove(clientID);
-
-		// The PrintWriter is closed in the ClientThread
-		clientOutputs.remove(clientID);
-
+	public void removeClient(int clientID) {
+		lock.lock();
+		try {
+			// The connection is closed by the thread serving it
+			clientOutputs.remove(clientID);
 
-		playersInLobby.remove((Integer) clientID); // removal by object
-		readyPlayersInLobby.remove((Integer) clientID);
-		checkAllReady(); // The player that left could be the last player that wasn't ready
+			// The canvas the client was drawing on is claimed or cleared the same as if the client released it
+			releaseAcquiredCanvas(clientID);
+			clientColors.release(clientID);
 
-		// Note: The color belonging to a client is not removed from the score even if the client disconnects
 
-		// All users disconnected. Reset server state and restart server connection thread to allow new connections
-		if(clientOutputs.size() == 0) {
-			System.out.println("All client's disconnected. Resetting Server");
-			resetServerState();
-			NetworkServer server = new NetworkServer();
-			server.setName("Server");
-			server.setDaemon(true);
-			server.start();
-		}
-	}
+			playersInLobby.remove((Integer) clientID); // removal by object
+			readyPlayersInLobby.remove((Integer) clientID);
+			checkAllReady(); // The player that left could be the last player that wasn't ready
 
-	private synchronized void resetServerState() {
-		clientOutputs.clear();
-		clientColors.clear();
-		canvasesInUse.clear();
-		clientScores.clear();
-		playersInLobby.clear();
-		readyPlayersInLobby.clear();
-		lobbyMessagesList.clear();
-		Arrays.fill(isLocked, false);
-	}
+			// Note: The color belonging to a client is not removed from the score even if the client disconnects
 
+			// All users disconnected. The room is discarded and a new one is created the next time its name is joined
+			if(clientOutputs.size() == 0) {
+				System.out.println("All client's disconnected. Closing room '" + roomName + "'");
+				close();
 
-	/**
-	 * Locks the given canvas.
-	 * <p>
-	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
-	 * @param canvasID The ID of the canvas to be locked.
-	 */
-	public synchronized void lockCanvas(int canvasID) {
-		if(canvasID >= isLocked.length || canvasID < 0) {
-			throw new IllegalArgumentException("Invalid canvasID");
+				if(tick != null) {
+					tick.cancel(false);
+					pendingDraws.clear();
+				}
+			}
+		}
+		finally {
+			lock.unlock();
 		}
-
-		isLocked[canvasID] = true;
 	}
 
 	/**
@@ -147,24 +187,14 @@ class ServerData {
 	 * @param canvasID The ID of the canvas
 	 * @return True if the client successfully acquired the canvas, false otherwise
 	 */
-	public synchronized boolean acquireCanvasForDrawing(int clientID, int canvasID) {
+	public boolean acquireCanvasForDrawing(int clientID, int canvasID) {
 		if(!clientOutputs.containsKey(clientID)) {
 			throw new IllegalArgumentException("Attempting to acquire a canvas with an invalid clientID");
 		}
 
-		// Check valid index
-		if(canvasID >= isLocked.length || canvasID < 0) {
-			throw new IllegalArgumentException("Invalid canvasID");
-		}
-
-		// If canvas is being drawn on by someone or is locked then it cannot be acquired
-		if(canvasesInUse.containsValue(canvasID) || isLocked[canvasID]) {
-			return false;
-		}
-
-		// otherwise acquire canvas for the client and return true
-		canvasesInUse.put(clientID, canvasID);
-		return true;
+		// Fails if the canvas is being drawn on by someone or is locked, or if the client hasn't released its last
+		// canvas. That canvas must go through releaseAcquiredCanvas so it is claimed or cleared on every client
+		return canvases.acquire(clientID, canvasID);
 	}
 
 
@@ -173,24 +203,37 @@ class ServerData {
 	 * A thread-safe method which checks if a colour is registered by a client.
 	 * <p>
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
-	 * @param clientID The ID of the client, obtained by the hashcode of their socket
-	 * @param colorHash The hashcode of the color being checked
+	 * @param clientID The ID of the client
+	 * @param rgba The 8 bit RGBA value of the color being checked, see BinaryProtocol.encodeColor
 	 * @return True if the client is allowed to use the given colour, false otherwise.
 	 */
-	public synchronized boolean checkRegisteredColor(int clientID, int colorHash) {
-		return clientColors.containsKey(clientID) && clientColors.get(clientID).equals(colorHash);
+	public boolean checkRegisteredColor(int clientID, int rgba) {
+		int colorIndex = clientColors.getColorIndex(clientID);
+		return colorIndex != ColorPalette.NO_COLOR && clientColors.getColorRGBA(colorIndex) == rgba;
+	}
+
+	/**
+	 * A thread-safe method which checks if a colour is registered by a client.
+	 * <p>
+	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
+	 * @param clientID The ID of the client
+	 * @param colorIndex The palette index of the color being checked
+	 * @return True if the client is allowed to use the given colour, false otherwise.
+	 */
+	public boolean checkRegisteredColorIndex(int clientID, int colorIndex) {
+		return clientColors.isRegisteredTo(clientID, colorIndex);
 	}
 
 	/**
 	 * A thread-safe method which checks if a client is allowed to draw on a given canvas.
 	 * <p>
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
-	 * @param clientID The ID of the client, obtained by the hashcode of their socket
+	 * @param clientID The ID of the client
 	 * @param canvasID The ID of the canvas
 	 * @return True if the client is allowed to draw on the canvas, false otherwise.
 	 */
-	public synchronized boolean checkValidCanvas(int clientID, int canvasID) {
-		return canvasesInUse.containsKey(clientID) && canvasesInUse.get(clientID).equals(canvasID);
+	public boolean checkValidCanvas(int clientID, int canvasID) {
+		return canvases.isOwnedBy(clientID, canvasID);
 	}
 
 	/**
@@ -200,8 +243,14 @@ class ServerData {
 	 * @param message The message being sent
 	 * @param clientID The id of the client to send the message to
 	 */
-	private synchronized void sendMessageToClient(String message, int clientID) {
-		clientOutputs.get(clientID).println(message);
+	private void sendMessageToClient(ServerMessage message, int clientID) {
+		lock.lock();
+		try {
+			clientOutputs.get(clientID).send(message);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -210,9 +259,19 @@ class ServerData {
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
 	 * @param message The message being sent
 	 */
-	public synchronized void sendMessage(String message) {
-		for(int clientID : clientOutputs.keySet()) {
-			sendMessageToClient(message, clientID);
+	public void sendMessage(String message) {
+		ServerMessage encoded = new ServerMessage(message);
+		lock.lock();
+		try {
+			// Draws sent before this message must be received first
+			flushDraws();
+
+			for(int clientID : clientOutputs.keySet()) {
+				sendMessageToClient(encoded, clientID);
+			}
+		}
+		finally {
+			lock.unlock();
 		}
 	}
 
@@ -223,13 +282,23 @@ class ServerData {
 	 * @param message The message being sent
 	 * @param clientIDs An array containing the ids of the clients to send the message to.
 	 */
-	public synchronized void sendMessage(String message, int[] clientIDs) {
-		for(int clientID : clientIDs) {
-			if(!clientOutputs.containsKey(clientID)) {
-				throw new IllegalArgumentException("Invalid clientID in array");
+	public void sendMessage(String message, int[] clientIDs) {
+		ServerMessage encoded = new ServerMessage(message);
+		lock.lock();
+		try {
+			// Draws sent before this message must be received first
+			flushDraws();
+
+			for(int clientID : clientIDs) {
+				if(!clientOutputs.containsKey(clientID)) {
+					throw new IllegalArgumentException("Invalid clientID in array");
+				}
+
+				sendMessageToClient(encoded, clientID);
 			}
-
-			sendMessageToClient(message, clientID);
+		}
+		finally {
+			lock.unlock();
 		}
 	}
 
@@ -240,12 +309,22 @@ class ServerData {
 	 * @param message The message being sent
 	 * @param clientID The ID of the client to send the message to
 	 */
-	public synchronized void sendMessage(String message, int clientID) {
-		if(!clientOutputs.containsKey(clientID)) {
-			throw new IllegalArgumentException("Invalid clientID in array");
-		}
+	public void sendMessage(String message, int clientID) {
+		ServerMessage encoded = new ServerMessage(message);
+		lock.lock();
+		try {
+			// Draws sent before this message must be received first
+			flushDraws();
 
-		sendMessageToClient(message, clientID);
+			if(!clientOutputs.containsKey(clientID)) {
+				throw new IllegalArgumentException("Invalid clientID in array");
+			}
+
+			sendMessageToClient(encoded, clientID);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -255,12 +334,22 @@ class ServerData {
 	 * @param message The message being sent
 	 * @param excludedClients An array containing the ids of the clients which the message should not be sent to.
 	 */
-	public synchronized void sendMessageExcluding(String message, List<Integer> excludedClients) {
-		for(int clientID : clientOutputs.keySet()) {
-			if(!excludedClients.contains(clientID)) {
-				sendMessageToClient(message, clientID);
+	public void sendMessageExcluding(String message, List<Integer> excludedClients) {
+		ServerMessage encoded = new ServerMessage(message);
+		lock.lock();
+		try {
+			// Draws sent before this message must be received first
+			flushDraws();
+
+			for(int clientID : clientOutputs.keySet()) {
+				if(!excludedClients.contains(clientID)) {
+					sendMessageToClient(encoded, clientID);
+				}
 			}
 		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -270,80 +359,253 @@ class ServerData {
 	 * @param message The message being sent
 	 * @param excludedClient The clientID of the client which the message should not be sent to.
 	 */
-	public synchronized void sendMessageExcluding(String message, int excludedClient) {
-		for(int clientID : clientOutputs.keySet()) {
-			if(clientID != excludedClient) {
-				sendMessageToClient(message, clientID);
+	public void sendMessageExcluding(String message, int excludedClient) {
+		sendMessageExcluding(new ServerMessage(message), excludedClient);
+	}
+
+	/**
+	 * Sends a message to all clients excluding a single client.
+	 * <p>
+	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
+	 * @param message The message being sent
+	 * @param excludedClient The clientID of the client which the message should not be sent to.
+	 */
+	public void sendMessageExcluding(ServerMessage message, int excludedClient) {
+		lock.lock();
+		try {
+			// Draws sent before this message must be received first
+			flushDraws();
+
+			for(int clientID : clientOutputs.keySet()) {
+				if(clientID != excludedClient) {
+					sendMessageToClient(message, clientID);
+				}
 			}
 		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
-	 * Releases the canvas acquired by the provided client. Does nothing if no canvases are acquired by the client.
+	 * Sends a draw or stroke batch message to all clients excluding its sender.
+	 * <p>
+	 * If the room runs with ticks the message is buffered with the other draws on the same canvas and sent on the next
+	 * tick, together with every other draw received during the tick, as a single write per client.
+	 * Otherwise it is sent immediately.
 	 * <p>
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
-	 * @param clientID The ID of the client whose canvas is being released.
+	 * @param message The draw or stroke batch message
+	 * @param canvasID The canvas the message draws on
+	 * @param senderID The clientID of the client who sent the message
 	 */
-	public synchronized void releaseAcquiredCanvas(int clientID) {
-		canvasesInUse.remove(clientID);
+	public void sendDraw(ServerMessage message, int canvasID, int senderID) {
+		lock.lock();
+		try {
+			if(tick == null) {
+				sendMessageExcluding(message, senderID);
+				return;
+			}
+
+			pendingDraws.computeIfAbsent(canvasID, id -> new ArrayList<>()).add(new PendingDraw(message, senderID));
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
-	 * Attempts to register the given color with the given client.
+	 * Sends the draws buffered since the last tick. Each client receives every draw it didn't send itself as a
+	 * single combined message. Does nothing if no draws are buffered.
 	 * <p>
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
-	 * @param clientID The ID of the client to register the color to.
-	 * @param colorHash The hashcode of the color being registered
-	 * @return True if the color has been successfully registered to the client, false otherwise.
 	 */
-	public synchronized boolean registerColor(int clientID, int colorHash) {
-		if(clientColors.containsValue(colorHash)) {
-			return false;
+	void flushDraws() {
+		lock.lock();
+		try {
+			if(pendingDraws.isEmpty()) {
+				return;
+			}
+
+			List<PendingDraw> draws = new ArrayList<>();
+			Set<Integer> senders = new HashSet<>();
+			for(List<PendingDraw> canvasDraws : pendingDraws.values()) {
+				for(PendingDraw draw : canvasDraws) {
+					draws.add(draw);
+					senders.add(draw.senderID);
+				}
+			}
+			pendingDraws.clear();
+
+			// Every client that didn't draw during the tick receives the same message
+			ServerMessage allDraws = null;
+
+			for(int clientID : clientOutputs.keySet()) {
+				if(!senders.contains(clientID)) {
+					if(allDraws == null) {
+						allDraws = combineDraws(draws, 0);
+					}
+					sendMessageToClient(allDraws, clientID);
+				}
+				else {
+					ServerMessage otherDraws = combineDraws(draws, clientID);
+					if(otherDraws != null) {
+						sendMessageToClient(otherDraws, clientID);
+					}
+				}
+			}
+		}
+		// An exception here would otherwise stop the ticks of this room
+		catch (RuntimeException ex) {
+			System.out.println("Exception on Server: " + ex.getMessage());
+			ex.printStackTrace();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param draws The buffered draws
+	 * @param excludedClient The client whose draws are left out, or 0 to include every draw
+	 * @return The combined message, or null if every draw was left out
+	 */
+	private ServerMessage combineDraws(List<PendingDraw> draws, int excludedClient) {
+		List<ServerMessage> messages = new ArrayList<>(draws.size());
+		for(PendingDraw draw : draws) {
+			if(draw.senderID != excludedClient) {
+				messages.add(draw.message);
+			}
+		}
+
+		return messages.isEmpty() ? null : ServerMessage.combine(messages);
+	}
+
+	/**
+	 * A draw message waiting for the next tick
+	 */
+	private static class PendingDraw {
+		private final ServerMessage message;
+		private final int senderID;
+
+		PendingDraw(ServerMessage message, int senderID) {
+			this.message = message;
+			this.senderID = senderID;
+		}
+	}
+
+	/**
+	 * Adds a draw point to the coverage of the canvas. The client must have acquired the canvas.
+	 * <p>
+	 * This method must only be called by the thread serving the client.
+	 * @param canvasID The ID of the canvas
+	 * @param x The x coordinate of the point
+	 * @param y The y coordinate of the point
+	 * @param pathStart True if the point starts a new path
+	 */
+	public void addCoverage(int canvasID, double x, double y, boolean pathStart) {
+		coverage.addPoint(canvasID, x, y, pathStart);
+	}
+
+	/**
+	 * Releases the canvas acquired by the provided client. Does nothing if no canvases are acquired by the client.
+	 * <p>
+	 * If more than half of the canvas is covered by strokes the client claims it: the canvas is locked, filled with the
+	 * client's colour on every client and the client scores. Otherwise the canvas is cleared on every client.
+	 * Once every canvas is claimed the results are sent to every client.
+	 * <p>
+	 * This method must only be called by the thread serving the client.
+	 * @param clientID The ID of the client whose canvas is being released.
+	 */
+	public void releaseAcquiredCanvas(int clientID) {
+		int canvasID = canvases.getAcquiredCanvas(clientID);
+		if(canvasID == -1) {
+			return;
+		}
+
+		lock.lock();
+		try {
+			int colorIndex = clientColors.getColorIndex(clientID);
+
+			// The messages are sent before the canvas is released so they can't overtake the draws of the next client
+			if(colorIndex != ColorPalette.NO_COLOR && coverage.isClaimed(canvasID)) {
+				claimCanvas(canvasID, colorIndex);
+			}
+			else {
+				sendMessage(NetworkMessage.addCanvasClearRequestHeader(Integer.toString(canvasID)));
+			}
+			// A claimed canvas is never drawn on again and a cleared one starts empty
+			coverage.clear(canvasID);
+
+			canvases.release(clientID);
+
+			// Every canvas is coloured in so the game is over
+			if(canvases.allLocked()) {
+				sendMessage(NetworkMessage.generateScoresAndGameResults(Integer.toString(getWinnerScore()), getWinningColorIndex()));
+			}
 		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void claimCanvas(int canvasID, int colorIndex) {
+		canvases.lock(canvasID);
+		// The score and results refer to the colour by its index, so it must not be given to another colour
+		clientColors.pin(colorIndex);
+		clientScores[colorIndex] += 10;
+		System.out.println("Canvas " + canvasID + " claimed by " + BinaryProtocol.decodeColor(clientColors.getColorRGBA(colorIndex))
+				+ " with " + coverage.getCoverage(canvasID) + "% filled");
 
-		clientColors.put(clientID, colorHash);
-		return true;
+		sendMessage(NetworkMessage.addCanvasOwnRequestHeader(Integer.toString(canvasID), colorIndex));
 	}
 
 	/**
-	 * Sets the score of a given color.
+	 * Attempts to register the given color with the given client.
 	 * <p>
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
-	 * @param color The color whose score is to be set
-	 * @param score The new value of the score
-	 * @return True if all canvases are locked, (i.e. fully coloured in) indicating the game has ended. False otherwise.
+	 * @param clientID The ID of the client to register the color to.
+	 * @param rgba The 8 bit RGBA value of the color being registered, see BinaryProtocol.encodeColor
+	 * @return The palette index of the color if it has been successfully registered to the client,
+	 * ColorPalette.NO_COLOR otherwise.
 	 */
-	public synchronized boolean setScore(Color color, int score){
-		clientScores.put(color, score);
-		return !Arrays.asList(isLocked).contains(false);
+	public int registerColor(int clientID, int rgba) {
+		return clientColors.register(clientID, rgba);
 	}
 
 	/**
-	 * Gets the winning color. If there is a single winner this is the color belonging to the player.
-	 * If there is a tie then the color is Color.Transparent.
+	 * Gets the winning color. If there is a single winner this is the palette index of the color belonging to the player.
+	 * If there is a tie then the color is ColorPalette.NO_COLOR.
 	 * <p>
 	 * This method should only be called when the game is completely finished (i.e. all canvases coloured in)
 	 * <p>
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
-	 * @return The winning color.
+	 * @return The palette index of the winning color.
 	 */
-	public synchronized Color getWinningColor() {
-		if(Arrays.asList(isLocked).contains(false)) {
-			throw new IllegalStateException("Attempting to get the winning color in an unfinished game");
-		}
+	public int getWinningColorIndex() {
+		lock.lock();
+		try {
+			if(!canvases.allLocked()) {
+				throw new IllegalStateException("Attempting to get the winning color in an unfinished game");
+			}
 
-		int highestScore = getWinnerScore();
-		int scoreCount = 0;
-		Color color = null;
+			int highestScore = getWinnerScore();
+			int scoreCount = 0;
+			int colorIndex = ColorPalette.NO_COLOR;
 
-		for (Map.Entry<Color, Integer> entry : clientScores.entrySet()) {  // Iterate through hashmap
-			if (entry.getValue() == highestScore) {
-				scoreCount++;
-				color = entry.getKey();
+			int colorCount = clientColors.size();
+			for(int i = 0; i < colorCount; i++) {
+				if(clientScores[i] == highestScore) {
+					scoreCount++;
+					colorIndex = i;
+				}
 			}
-		}
 
-		return scoreCount == 1 ? color : Color.TRANSPARENT;
+			return scoreCount == 1 ? colorIndex : ColorPalette.NO_COLOR;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -354,12 +616,23 @@ class ServerData {
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
 	 * @return The winning score
 	 */
-	public synchronized int getWinnerScore() {
-		if(Arrays.asList(isLocked).contains(false)) {
-			throw new IllegalStateException("Attempting to get the winning score in an unfinished game");
-		}
+	public int getWinnerScore() {
+		lock.lock();
+		try {
+			if(!canvases.allLocked()) {
+				throw new IllegalStateException("Attempting to get the winning score in an unfinished game");
+			}
 
-		return Collections.max(clientScores.values());// This will return highest Score
+			int highestScore = 0;
+			int colorCount = clientColors.size();
+			for(int i = 0; i < colorCount; i++) {
+				highestScore = Math.max(highestScore, clientScores[i]);
+			}
+			return highestScore;
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 
@@ -369,8 +642,14 @@ class ServerData {
 	 * This method is thread-safe and can be called by any thread without worrying about concurrency.
 	 * @param clientID The ID of the client
 	 */
-	public synchronized void lobbyPlayerJoined(int clientID) {
-		playersInLobby.add(clientID);
+	public void lobbyPlayerJoined(int clientID) {
+		lock.lock();
+		try {
+			playersInLobby.add(clientID);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -380,79 +659,88 @@ class ServerData {
 	 * @param clientID The ID of the client
 	 * @param isReady The new ready status
 	 */
-	public synchronized void lobbyPlayerReady(int clientID, boolean isReady) {
-		if(isReady) {
-			if(!readyPlayersInLobby.contains(clientID)) {
-				readyPlayersInLobby.add(clientID);
+	public void lobbyPlayerReady(int clientID, boolean isReady) {
+		lock.lock();
+		try {
+			if(isReady) {
+				if(!readyPlayersInLobby.contains(clientID)) {
+					readyPlayersInLobby.add(clientID);
+				}
+			}
+			else {
+				readyPlayersInLobby.remove((Integer) clientID); // object removal
 			}
+
+			checkAllReady();
 		}
-		else {
-			readyPlayersInLobby.remove((Integer) clientID); // object removal
+		finally {
+			lock.unlock();
 		}
-
-		checkAllReady();
 	}
 
 	/**
 	 * Adds the lobby message to the list of all lobby messages sent
 	 * @param message The message to be added
 	 */
-	public synchronized void addLobbyMessageToList(String message) {
-		lobbyMessagesList.add(message);
+	public void addLobbyMessageToList(String message) {
+		lock.lock();
+		try {
+			lobbyMessagesList.add(message);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
 	 * Sends the complete lobby message history to the provided client
 	 * @param clientID The ID of the client to send the list to
 	 */
-	public synchronized void sendLobbyMessageHistory(int clientID) {
-		for(String msg : lobbyMessagesList) {
-			sendMessage(msg, clientID);
+	public void sendLobbyMessageHistory(int clientID) {
+		lock.lock();
+		try {
+			for(String msg : lobbyMessagesList) {
+				sendMessage(msg, clientID);
+			}
+		}
+		finally {
+			lock.unlock();
 		}
 	}
 
 	/**
 	 * Checks if all the players in the lobby are ready. If they are then it sends the lobby start countdown message
 	 */
-	private synchronized void checkAllReady() {
-		if(playersInLobby.size() == readyPlayersInLobby.size()) {
-			String message = NetworkMessage.generateLobbyStartCountdownMessage();
-			addLobbyMessageToList(message);
-			sendMessage(message);
-
-			// Closing the server socket will prevent any new players from joining
-			try {
-				serverSocket.close();
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
+	private void checkAllReady() {
+		lock.lock();
+		try {
+			if(!closed && !playersInLobby.isEmpty() && playersInLobby.size() == readyPlayersInLobby.size()) {
+				String message = NetworkMessage.generateLobbyStartCountdownMessage();
+				addLobbyMessageToList(message);
+				sendMessage(message);
+
+				// Closing the room will prevent any new players from joining
+				close();
 			}
 		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/**
-	 * Sets the ServerSocket that the game uses to create new connections.
-	 * This must be set before any clients connect and the game starts.
-	 * @param socket The ServerSocket
+	 * Closes the room to new players and removes it from GameRooms so its name can be used by a new room.
+	 * The clients already in the room keep playing.
 	 */
-	public synchronized void setServerSocket(ServerSocket socket) {
-		this.serverSocket = socket;
-	}
-
-
-
-	//checking if a player won a game or if there is a tie
-	public ConcurrentHashMap<Color, Integer> checkResult(){
-		int highestScore = Collections.max(clientScores.values());// This will return highest Score
-
-		ConcurrentHashMap <Color, Integer> winners = new ConcurrentHashMap<>();
-
-		for (Map.Entry<Color, Integer> entry : clientScores.entrySet()) {  // Iterate through hashmap
-			if (entry.getValue() == highestScore) {
-				winners.put(entry.getKey(), entry.getValue());
-			}
+	private void close() {
+		lock.lock();
+		try {
+			closed = true;
+			GameRooms.getInstance().removeRoom(this);
+		}
+		finally {
+			lock.unlock();
 		}
-		return winners;
 	}
 
 
@@ -0,0 +1,140 @@
+package networking.server;
+
+import com.example.javafxtest.DrawInfo;
+import networking.BinaryProtocol;
+import networking.NetworkMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A message sent from the server to one or more clients.
+ * <p>
+ * Clients can use either the text or the binary protocol, so a message can be encoded both ways. Each encoding is
+ * created the first time a recipient needs it and then shared by every other recipient using the same protocol.
+ */
+class ServerMessage {
+	// The text form of the message. Null for draw and stroke batch messages that were received in binary until it is needed
+	private volatile String text;
+	// The drawing carried by a draw message. Null for all other messages
+	private final DrawInfo draw;
+	// The encoded payload of a stroke batch message. Null for all other messages
+	private final byte[] strokeBatch;
+	// The messages combined into this one, see combine. Null for all other messages
+	private final List<ServerMessage> parts;
+
+	private volatile byte[] textLine;
+	private volatile byte[] frame;
+
+	ServerMessage(String text) {
+		this(text, null, null, null);
+	}
+
+	private ServerMessage(String text, DrawInfo draw, byte[] strokeBatch, List<ServerMessage> parts) {
+		this.text = text;
+		this.draw = draw;
+		this.strokeBatch = strokeBatch;
+		this.parts = parts;
+	}
+
+	/**
+	 * Creates a draw message.
+	 * @param draw The drawing
+	 * @param json The Gson serialization of the drawing if it was received as text, null otherwise
+	 * @return The message
+	 */
+	static ServerMessage draw(DrawInfo draw, String json) {
+		return new ServerMessage(json == null ? null : NetworkMessage.addDrawMessageHeader(json), draw, null, null);
+	}
+
+	/**
+	 * Creates a stroke batch message. The payload is forwarded as it was received, without decoding the points again.
+	 * @param payload The payload of the stroke batch. See BinaryProtocol.encodeStrokeBatch
+	 * @return The message
+	 */
+	static ServerMessage strokeBatch(byte[] payload) {
+		return new ServerMessage(null, null, payload, null);
+	}
+
+	/**
+	 * Combines several messages into one so they are queued and written to a client as a single write.
+	 * The client receives the same lines or frames as if the messages were sent one at a time.
+	 * Each part keeps its own cached encodings, so parts shared by several combined messages are only encoded once.
+	 * @param parts The messages in the order they should be received
+	 * @return The message
+	 */
+	static ServerMessage combine(List<ServerMessage> parts) {
+		return new ServerMessage(null, null, null, parts);
+	}
+
+	/**
+	 * @return True if the message only carries drawings. Drawings can be dropped for a client that falls behind,
+	 * see OutboundQueue
+	 */
+	boolean isDrawing() {
+		if(parts == null) {
+			return draw != null || strokeBatch != null;
+		}
+
+		for(ServerMessage part : parts) {
+			if(!part.isDrawing()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte[] concat(Function<ServerMessage, byte[]> encoding) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for(ServerMessage part : parts) {
+			bytes.writeBytes(encoding.apply(part));
+		}
+
+		return bytes.toByteArray();
+	}
+
+	private String getText() {
+		if(text == null) {
+			text = draw != null ? NetworkMessage.generateDrawMessage(draw)
+					: NetworkMessage.addStrokeBatchHeader(Base64.getEncoder().encodeToString(strokeBatch));
+		}
+
+		return text;
+	}
+
+	/**
+	 * @return The UTF-8 encoding of the text form of the message, including the line ending
+	 */
+	byte[] getTextLine() {
+		if(textLine == null) {
+			textLine = parts != null ? concat(ServerMessage::getTextLine) : (getText() + "\n").getBytes(StandardCharsets.UTF_8);
+		}
+
+		return textLine;
+	}
+
+	/**
+	 * @return The binary frame of the message, including the length prefix
+	 */
+	byte[] getFrame() {
+		if(frame == null) {
+			if(parts != null) {
+				frame = concat(ServerMessage::getFrame);
+			}
+			else if(draw != null) {
+				frame = BinaryProtocol.encodeDrawFrame(draw);
+			}
+			else if(strokeBatch != null) {
+				frame = BinaryProtocol.encodeFrame(BinaryProtocol.STROKE_BATCH_OPCODE, strokeBatch);
+			}
+			else {
+				frame = BinaryProtocol.encodeFrame(getText());
+			}
+		}
+
+		return frame;
+	}
+}
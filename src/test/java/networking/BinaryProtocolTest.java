@@ -0,0 +1,143 @@
+package networking;
+
+import com.example.javafxtest.DrawInfo;
+import com.example.javafxtest.StrokeBatch;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+
+    @Test
+    void drawRoundTrip() throws IOException {
+        DrawInfo draw = new DrawInfo(101.5, 0.25, 17, Color.rgb(12, 200, 34), true, false, true);
+        byte[] frame = BinaryProtocol.encodeDrawFrame(draw);
+        assertEquals(4 + 1 + BinaryProtocol.DRAW_PAYLOAD_SIZE, frame.length);
+
+        ByteBuffer received = BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(frame)));
+        assertEquals(BinaryProtocol.DRAW_OPCODE, received.get());
+
+        DrawInfo decoded = BinaryProtocol.decodeDraw(received);
+        assertEquals(draw.getX(), decoded.getX());
+        assertEquals(draw.getY(), decoded.getY());
+        assertEquals(draw.getCanvasID(), decoded.getCanvasID());
+        assertEquals(draw.getColor(), decoded.getColor());
+        assertTrue(decoded.isPathStart());
+        assertFalse(decoded.isClearCanvas());
+        assertTrue(decoded.isOwnCanvas());
+    }
+
+    @Test
+    void textMessageRoundTrip() throws IOException {
+        String message = NetworkMessage.addCanvasOwnRequestHeader("3", 2);
+        byte[] frame = BinaryProtocol.encodeFrame(message);
+
+        ByteBuffer received = BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(frame)));
+        assertEquals(message, BinaryProtocol.decodeToText(received));
+    }
+
+    @Test
+    void requestIDRoundTrip() throws IOException {
+        String message = NetworkMessage.addRequestID(70000, NetworkMessage.addColorRequestHeader("255"));
+        assertEquals(70000, NetworkMessage.getRequestID(message));
+        assertEquals(NetworkMessage.addColorRequestHeader("255"), NetworkMessage.removeRequestID(message));
+
+        byte[] frame = BinaryProtocol.encodeFrame(message);
+        ByteBuffer received = BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(frame)));
+        assertEquals(message, BinaryProtocol.decodeToText(received));
+
+        // Messages without an ID are unchanged
+        String plain = NetworkMessage.addCanvasRequestHeader("3");
+        assertEquals(0, NetworkMessage.getRequestID(plain));
+        assertEquals(plain, NetworkMessage.removeRequestID(plain));
+    }
+
+    @Test
+    void strokeBatchRoundTrip() throws IOException {
+        double[] xs = {0, 99.875, 98.5, 3.25, 3.25};
+        double[] ys = {100, 0.125, 55, 55, 7};
+        StrokeBatch batch = new StrokeBatch(42, 3, true, xs, ys);
+
+        byte[] frame = BinaryProtocol.encodeFrame(NetworkMessage.generateStrokeBatchMessage(batch));
+        ByteBuffer received = BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(frame)));
+        assertEquals(BinaryProtocol.STROKE_BATCH_OPCODE, received.get());
+
+        StrokeBatch decoded = BinaryProtocol.decodeStrokeBatch(received);
+        assertEquals(42, decoded.getCanvasID());
+        assertEquals(3, decoded.getColorIndex());
+        assertTrue(decoded.isPathStart());
+        assertEquals(xs.length, decoded.getPointCount());
+        for(int i = 0; i < xs.length; i++) {
+            assertEquals(xs[i], decoded.getX(i));
+            assertEquals(ys[i], decoded.getY(i));
+        }
+
+        // Coordinates are rounded to the quantisation step
+        StrokeBatch rounded = BinaryProtocol.decodeStrokeBatch(ByteBuffer.wrap(BinaryProtocol.encodeStrokeBatch(
+                new StrokeBatch(0, 0, false, new double[] {1.3}, new double[] {-2.01}))));
+        assertEquals(1.25, rounded.getX(0));
+        assertEquals(-2, rounded.getY(0));
+    }
+
+    @Test
+    void timedStrokeBatchRoundTrip() {
+        int[] times = {-5, 0, 16, 16, 40};
+        StrokeBatch batch = new StrokeBatch(7, 200, false, new double[] {1, 2, 3, 4, 5}, new double[] {5, 4, 3, 2, 1}, times);
+
+        StrokeBatch decoded = BinaryProtocol.decodeStrokeBatch(ByteBuffer.wrap(BinaryProtocol.encodeStrokeBatch(batch)));
+        assertTrue(decoded.hasTimes());
+        for(int i = 0; i < times.length; i++) {
+            assertEquals(times[i], decoded.getTime(i));
+            assertEquals(batch.getX(i), decoded.getX(i));
+        }
+
+        // Batches without times stay without times
+        assertFalse(BinaryProtocol.decodeStrokeBatch(ByteBuffer.wrap(BinaryProtocol.encodeStrokeBatch(
+                new StrokeBatch(0, 0, false, new double[] {1}, new double[] {2})))).hasTimes());
+    }
+
+    @Test
+    void pointReaderMatchesDecode() {
+        int[] times = {100, 103, 110};
+        StrokeBatch batch = new StrokeBatch(9, 1, true, new double[] {4, 5.5, 7}, new double[] {0, 2.125, 1}, times);
+        StrokeBatch decoded = BinaryProtocol.decodeStrokeBatch(ByteBuffer.wrap(BinaryProtocol.encodeStrokeBatch(batch)));
+
+        ColorPalette palette = new ColorPalette();
+        palette.set(1, Color.GOLD);
+        BinaryProtocol.PointReader reader = new BinaryProtocol.PointReader(palette);
+        reader.readStrokeBatch(ByteBuffer.wrap(BinaryProtocol.encodeStrokeBatch(batch)));
+        for(int i = 0; i < times.length; i++) {
+            assertTrue(reader.next());
+            assertEquals(decoded.getX(i), reader.getX());
+            assertEquals(decoded.getY(i), reader.getY());
+            assertEquals(times[i], reader.getTime());
+            assertEquals(i == 0, reader.isPathStart());
+            assertEquals(9, reader.getCanvasID());
+            assertSame(palette.get(decoded.getColorIndex()), reader.getColor());
+        }
+        assertFalse(reader.next());
+
+        ByteBuffer draw = ByteBuffer.allocate(BinaryProtocol.DRAW_PAYLOAD_SIZE);
+        BinaryProtocol.encodeDraw(new DrawInfo(3, 4, 2, Color.GOLD, false, false, true), draw);
+        reader.readDraw(draw.flip());
+        assertTrue(reader.next());
+        assertEquals(3, reader.getX());
+        assertTrue(reader.isOwnCanvas());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void invalidFrameLength() {
+        byte[] tooLong = ByteBuffer.allocate(4).putInt(BinaryProtocol.MAX_FRAME_SIZE + 1).array();
+        assertThrows(IOException.class, () -> BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(tooLong))));
+
+        byte[] empty = ByteBuffer.allocate(4).putInt(0).array();
+        assertThrows(IOException.class, () -> BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(empty))));
+    }
+}
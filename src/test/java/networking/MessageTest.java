@@ -0,0 +1,45 @@
+package networking;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageTest {
+
+    @Test
+    void parsesTextAndFramesAlike() throws IOException {
+        String text = NetworkMessage.addRequestID(12, NetworkMessage.addCanvasRequestHeader("3-true"));
+        Message message = new Message().parseText(text);
+        assertEquals(MessageType.CANVAS_REQUEST, message.getType());
+        assertEquals(12, message.getRequestID());
+        assertEquals("3-true", message.getData());
+        assertFalse(message.isBinary());
+
+        byte[] frame = BinaryProtocol.encodeFrame(text);
+        message.parseFrame(BinaryProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(frame))));
+        assertEquals(MessageType.CANVAS_REQUEST, message.getType());
+        assertEquals(12, message.getRequestID());
+        assertEquals("3-true", message.getData());
+        assertTrue(message.isBinary());
+    }
+
+    @Test
+    void failingHandlerOnlyLosesItsMessage() {
+        List<String> handled = new ArrayList<>();
+        MessageHandlers<List<String>> handlers = new MessageHandlers<List<String>>()
+                .register(MessageType.CANVAS_CLEAR, (context, message) -> Integer.parseInt(message.getData()))
+                .register(MessageType.BOARD, (context, message) -> context.add(message.getData()));
+
+        Message message = new Message();
+        assertFalse(handlers.dispatch(handled, message.parseText(NetworkMessage.addCanvasClearRequestHeader("x"))));
+        assertFalse(handlers.dispatch(handled, message.parseText(NetworkMessage.CANVAS_LOCK + "-1")));
+        assertTrue(handlers.dispatch(handled, message.parseText(NetworkMessage.BOARD_HEADER + "-4")));
+        assertEquals(List.of("4"), handled);
+    }
+}
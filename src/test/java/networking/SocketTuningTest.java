@@ -0,0 +1,30 @@
+package networking;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketTuningTest {
+
+    @Test
+    void flushDelayFollowsThePolicy() {
+        SocketTuning tuning = new SocketTuning();
+        long start = 1_000_000;
+
+        tuning.setFlushPolicy(SocketTuning.FlushPolicy.MESSAGE);
+        assertEquals(0, tuning.getFlushDelayNanos(false, start, start));
+
+        tuning.setFlushPolicy(SocketTuning.FlushPolicy.BATCH);
+        assertEquals(-1, tuning.getFlushDelayNanos(false, start, start));
+        assertEquals(0, tuning.getFlushDelayNanos(true, start, start));
+
+        tuning.setFlushPolicy(SocketTuning.FlushPolicy.WINDOW);
+        tuning.setFlushWindowMs(5);
+        long window = TimeUnit.MILLISECONDS.toNanos(5);
+        assertEquals(-1, tuning.getFlushDelayNanos(false, start, start + 1));
+        assertEquals(window - 1, tuning.getFlushDelayNanos(true, start, start + 1));
+        assertEquals(0, tuning.getFlushDelayNanos(false, start, start + window));
+    }
+}
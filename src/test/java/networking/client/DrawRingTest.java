@@ -0,0 +1,88 @@
+package networking.client;
+
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrawRingTest {
+
+    @Test
+    void recordsArePassedInOrder() throws InterruptedException {
+        int COUNT = 100000;
+        DrawRing ring = new DrawRing(64);
+
+        // Path starts are never collapsed or dropped, so every record arrives even when the ring is full
+        Thread producer = new Thread(() -> {
+            for(int i = 0; i < COUNT; i++) {
+                ring.claim().set(i, 0, i, Color.BLACK, true, false, false);
+                ring.publish();
+            }
+        });
+        producer.start();
+
+        int next = 0;
+        while(next < COUNT) {
+            int available = ring.available();
+            assertTrue(available <= ring.getCapacity());
+            if(available == 0) {
+                DrawRecord record = ring.pollOverflow();
+                if(record != null) {
+                    assertEquals(next++, record.getX());
+                }
+                continue;
+            }
+
+            for(int i = 0; i < available; i++) {
+                assertEquals(next++, ring.get(i).getX());
+            }
+            ring.free(available);
+        }
+
+        producer.join();
+        assertEquals(0, ring.available());
+        assertNull(ring.pollOverflow());
+    }
+
+    @Test
+    void fullRingCollapsesStrokesWithoutWaiting() {
+        DrawRing ring = new DrawRing(16);
+
+        // Nothing is read, like before the game starts
+        publish(ring, 0, 1, true, false);
+        for(int i = 1; i <= 100; i++) {
+            publish(ring, i, 1, false, false);
+        }
+        publish(ring, 0, 2, true, false);
+        for(int i = 0; i < 20; i++) {
+            publish(ring, i, 3, true, false);
+        }
+        // Replaces the path starts of canvas 3 that didn't fit
+        publish(ring, 0, 3, false, true);
+
+        List<DrawRecord> received = new ArrayList<>();
+        for(int i = 0; i < ring.available(); i++) {
+            received.add(ring.get(i));
+        }
+        ring.free(ring.available());
+        for(DrawRecord record = ring.pollOverflow(); record != null; record = ring.pollOverflow()) {
+            received.add(record);
+        }
+
+        // The first points of the stroke, then its last point in place of the points collapsed
+        assertEquals(1, received.get(0).getCanvasID());
+        assertEquals(11, received.get(11).getX());
+        assertEquals(100, received.get(12).getX());
+        assertEquals(2, received.get(13).getCanvasID());
+        assertTrue(received.get(received.size() - 1).isClearCanvas());
+        assertEquals(16 + 1, received.size());
+    }
+
+    private static void publish(DrawRing ring, double x, int canvasID, boolean pathStart, boolean clearCanvas) {
+        ring.claim().set(x, 0, canvasID, Color.BLACK, pathStart, clearCanvas, false);
+        ring.publish();
+    }
+}
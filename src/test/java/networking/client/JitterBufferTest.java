@@ -0,0 +1,63 @@
+package networking.client;
+
+import com.example.javafxtest.DrawInfo;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JitterBufferTest {
+
+    private final List<DrawInfo> drawn = new ArrayList<>();
+    private final DrawHandler handler = draw -> drawn.add(new DrawInfo(draw.getX(), draw.getY(), draw.getCanvasID(),
+            draw.getColor(), draw.isPathStart(), draw.isClearCanvas(), draw.isOwnCanvas()));
+
+    private static DrawRecord point(double x, int time, boolean pathStart, boolean batchStart, int arrivalTime) {
+        DrawRecord point = new DrawRecord();
+        point.set(x, 0, 3, Color.RED, pathStart, false, false);
+        point.timed = true;
+        point.time = time;
+        point.batchStart = batchStart;
+        point.arrivalTime = arrivalTime;
+        return point;
+    }
+
+    @Test
+    void pointsArePlayedAtTheirPace() {
+        JitterBuffer buffer = new JitterBuffer();
+
+        // Drawn 100ms apart by the sender, received together
+        buffer.add(point(0, 1000, true, true, 5000));
+        buffer.add(point(10, 1100, false, false, 5000));
+
+        buffer.release(5000, handler);
+        assertTrue(drawn.isEmpty());
+
+        // The first point is due after the playout delay, and the stroke grows towards the second point
+        buffer.release(5100, handler);
+        assertEquals(2, drawn.size());
+        assertTrue(drawn.get(0).isPathStart());
+        double partialX = drawn.get(1).getX();
+        assertTrue(partialX > 0 && partialX < 10);
+
+        buffer.release(5500, handler);
+        assertEquals(3, drawn.size());
+        assertEquals(10, drawn.get(2).getX());
+    }
+
+    @Test
+    void flushCanvasReleasesEverything() {
+        JitterBuffer buffer = new JitterBuffer();
+
+        buffer.add(point(0, 0, true, true, 0));
+        buffer.add(point(10, 100, false, false, 0));
+        buffer.flushCanvas(4, handler);
+        assertTrue(drawn.isEmpty());
+
+        buffer.flushCanvas(3, handler);
+        assertEquals(2, drawn.size());
+    }
+}
@@ -1,11 +1,22 @@
 package networking.client;
 
+import com.example.javafxtest.DrawInfo;
+import com.example.javafxtest.StrokeBatch;
+import com.sun.management.ThreadMXBean;
 import javafx.scene.paint.Color;
 import kotlin.jvm.Volatile;
+import networking.BinaryProtocol;
 import networking.server.NetworkServer;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -98,6 +109,116 @@ class NetworkClientTest {
         }
     }
 
+    @Test
+    void roomsAreIndependent() throws IOException {
+        NetworkClient client1 = getNetworkClient();
+        NetworkClient client2 = getNetworkClient();
+
+        assertTrue(client1.joinRoom("room1"));
+        assertTrue(client2.joinRoom("room2"));
+        assertFalse(client1.joinRoom("room2")); // Already in a room
+
+        // The same colour can be used in different rooms
+        assertTrue(client1.registerColor(Color.PURPLE));
+        assertTrue(client2.registerColor(Color.PURPLE));
+    }
+
+    @Test
+    void binaryAndTextClientsShareARoom() throws IOException, InterruptedException {
+        NetworkClient binaryClient = new NetworkClient("localhost", Integer.toString(PORT), true);
+        NetworkClient textClient = getNetworkClient();
+
+        assertTrue(binaryClient.joinRoom("mixed"));
+        assertTrue(textClient.joinRoom("mixed"));
+        assertTrue(binaryClient.registerColor(Color.ORANGE));
+        assertTrue(textClient.registerColor(Color.TEAL));
+        binaryClient.startClient();
+        textClient.startClient();
+        assertTrue(binaryClient.selectCanvasForDrawing(1));
+        assertTrue(textClient.selectCanvasForDrawing(2));
+
+        binaryClient.sendDrawing(12.5, 40);
+        textClient.sendDrawing(3, 7.25);
+
+        DrawInfo fromBinary = waitForInput(textClient);
+        assertEquals(12.5, fromBinary.getX());
+        assertEquals(40, fromBinary.getY());
+        assertEquals(1, fromBinary.getCanvasID());
+        assertEquals(Color.ORANGE, fromBinary.getColor());
+        assertTrue(fromBinary.isPathStart());
+
+        DrawInfo fromText = waitForInput(binaryClient);
+        assertEquals(3, fromText.getX());
+        assertEquals(7.25, fromText.getY());
+        assertEquals(2, fromText.getCanvasID());
+        assertEquals(Color.TEAL, fromText.getColor());
+
+        // Both drawings were received, so nothing is left waiting to be written
+        assertEquals(0, binaryClient.getOutboundQueueDepth());
+        assertEquals(0, textClient.getOutboundQueueDepth());
+    }
+
+    @Test
+    void receivingDrawingsAllocatesNothing() throws IOException {
+        NetworkClient client = getNetworkClient();
+        // Nobody else is in the room, so only this thread queues drawings
+        assertTrue(client.joinRoom("allocation"));
+        // The first colour registered in a room gets palette index 0
+        assertTrue(client.registerColor(Color.CORAL));
+
+        int POINT_COUNT = 64;
+        double[] xs = new double[POINT_COUNT];
+        double[] ys = new double[POINT_COUNT];
+        int[] times = new int[POINT_COUNT];
+        for(int i = 0; i < POINT_COUNT; i++) {
+            xs[i] = i * 1.5;
+            ys[i] = 99 - i;
+            times[i] = i * 4;
+        }
+        ByteBuffer batch = ByteBuffer.wrap(BinaryProtocol.encodeStrokeBatch(new StrokeBatch(5, 0, false, xs, ys, times)));
+        // A drawing without a time also draws the timed points buffered for the same player
+        ByteBuffer draw = ByteBuffer.allocate(BinaryProtocol.DRAW_PAYLOAD_SIZE);
+        BinaryProtocol.encodeDraw(new DrawInfo(1, 2, 5, Color.CORAL, false, false, false), draw);
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        DrawHandler handler = info -> {};
+
+        int WARMUP_COUNT = 20000;
+        int REPEAT_COUNT = 10000;
+        long allocated = 0;
+        for(int i = 0; i < WARMUP_COUNT + REPEAT_COUNT; i++) {
+            batch.position(0);
+            draw.position(0);
+
+            // Both sides are measured: the network thread decoding the drawings and the game buffering and drawing them
+            long before = threads.getCurrentThreadAllocatedBytes();
+            client.networkInputs.drawFrameReceived(BinaryProtocol.STROKE_BATCH_OPCODE, batch);
+            client.networkInputs.drawFrameReceived(BinaryProtocol.DRAW_OPCODE, draw);
+            client.networkInputs.handleInputs(handler, Long.MAX_VALUE);
+            if(i >= WARMUP_COUNT) {
+                allocated += threads.getCurrentThreadAllocatedBytes() - before;
+            }
+        }
+
+        double bytesPerPoint = (double) allocated / (REPEAT_COUNT * (POINT_COUNT + 1));
+        assertTrue(bytesPerPoint < 1, "Allocated " + bytesPerPoint + " bytes per point");
+    }
+
+    private DrawInfo waitForInput(NetworkClient client) throws InterruptedException {
+        List<DrawInfo> received = new ArrayList<>();
+        DrawHandler handler = draw -> received.add(new DrawInfo(draw.getX(), draw.getY(), draw.getCanvasID(), draw.getColor(),
+                draw.isPathStart(), draw.isClearCanvas(), draw.isOwnCanvas()));
+
+        // Received drawings are handled by the game every frame
+        for(int i = 0; i < 100 && received.isEmpty(); i++) {
+            Thread.sleep(10);
+            client.networkInputs.handleInputs(handler, Long.MAX_VALUE);
+        }
+
+        assertFalse(received.isEmpty());
+        return received.get(0);
+    }
+
     @Test
     void canvasSelection() throws IOException, InterruptedException {
         int REPEAT_COUNT = 10000;
@@ -152,41 +273,20 @@ class NetworkClientTest {
         }
 
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    @Test
+    void networkThreadEndsWhenTheServerCloses() throws IOException, InterruptedException {
+        List<String> received = new ArrayList<>();
+        try(ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            ClientNetworkThread thread = new ClientNetworkThread(socket.getInputStream(), false, List.of(received::add));
+            thread.setDaemon(true);
+            thread.start();
+
+            serverSocket.accept().close();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+            assertTrue(received.isEmpty());
+        }
+    }
+}
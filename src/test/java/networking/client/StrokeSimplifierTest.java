@@ -0,0 +1,37 @@
+package networking.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrokeSimplifierTest {
+
+    @Test
+    void collinearPointsAreRemoved() {
+        double[] xs = {0, 1, 2, 3.1, 4, 5, 5, 5};
+        double[] ys = {0, 0, 0.1, 0, 0, 0, 3, 6};
+        int[] times = {0, 1, 2, 3, 4, 5, 6, 7};
+
+        int last = StrokeSimplifier.simplify(xs, ys, times, 0, xs.length - 1, 0.5);
+
+        // Only the ends and the corner are left
+        assertEquals(2, last);
+        assertArrayEquals(new double[] {0, 5, 5}, Arrays.copyOf(xs, 3));
+        assertArrayEquals(new double[] {0, 0, 6}, Arrays.copyOf(ys, 3));
+        assertArrayEquals(new int[] {0, 5, 7}, Arrays.copyOf(times, 3));
+    }
+
+    @Test
+    void pointsOutsideTheRangeAreUnchanged() {
+        double[] xs = {9, 0, 1, 2, 9};
+        double[] ys = {9, 0, 0, 0, 9};
+        int[] times = {9, 0, 1, 2, 9};
+
+        assertEquals(2, StrokeSimplifier.simplify(xs, ys, times, 1, 3, 0.5));
+        assertEquals(9, xs[0]);
+        assertEquals(2, xs[2]);
+        assertEquals(9, xs[4]);
+    }
+}
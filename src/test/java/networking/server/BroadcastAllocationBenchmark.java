@@ -0,0 +1,125 @@
+package networking.server;
+
+import com.sun.management.ThreadMXBean;
+import networking.NetworkMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the memory allocated by the server for every recipient of a broadcast message.
+ * <p>
+ * This is not a unit test. Run it with the server mode and the number of clients:
+ *      java ... networking.server.BroadcastAllocationBenchmark nio 200
+ * <p>
+ * Every client joins the same room and then only reads. The benchmark broadcasts messages to the room and reports
+ * the bytes allocated by all the server threads divided by the number of messages delivered to clients.
+ */
+public class BroadcastAllocationBenchmark {
+
+	private static final int PORT = 7172;
+	private static final int WARMUP_MESSAGES = 2000;
+	private static final int MESSAGES = 5000;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		ServerConfig config = new ServerConfig(PORT);
+		config.setMode(ServerConfig.Mode.valueOf(args[0].toUpperCase()));
+		config.setOutboundQueueCapacity(WARMUP_MESSAGES + MESSAGES);
+		int clientCount = Integer.parseInt(args[1]);
+
+		NetworkServer server = new NetworkServer(config);
+		server.setName("Server");
+		server.setDaemon(true);
+		server.start();
+		Thread.sleep(500); // Give the server time to bind
+
+		AtomicLong bytesReceived = new AtomicLong();
+		List<Socket> sockets = new ArrayList<>();
+		for(int i = 0; i < clientCount; i++) {
+			Socket socket = new Socket("localhost", PORT);
+			sockets.add(socket);
+			socket.getOutputStream().write((NetworkMessage.generateRoomJoinMessage("benchmark") + "\n").getBytes(StandardCharsets.UTF_8));
+
+			Thread reader = new Thread(() -> drain(socket, bytesReceived));
+			reader.setDaemon(true);
+			reader.start();
+		}
+		Thread.sleep(500); // Give every client time to join
+
+		// The benchmark needs the room itself, so it joins as a client that ignores its messages
+		ServerData room = GameRooms.getInstance().joinRoom("benchmark", GameRooms.getInstance().nextClientID(), new ClientConnection() {
+			public void send(ServerMessage message) {}
+			public void useBinaryProtocol() {}
+			public void close() {}
+			public String getRemoteAddress() {
+				return "benchmark";
+			}
+		});
+
+		String message = NetworkMessage.addCanvasClearRequestHeader("12");
+		int lineLength = message.length() + 1;
+
+		broadcast(room, message, WARMUP_MESSAGES, clientCount, lineLength, bytesReceived);
+
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long[] threadIDs = Thread.getAllStackTraces().keySet().stream().mapToLong(Thread::threadId).toArray();
+		long allocatedBefore = sum(threads.getThreadAllocatedBytes(threadIDs));
+		long start = System.nanoTime();
+
+		broadcast(room, message, MESSAGES, clientCount, lineLength, bytesReceived);
+
+		long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+		long allocated = sum(threads.getThreadAllocatedBytes(threadIDs)) - allocatedBefore;
+
+		System.out.println("mode=" + config.getMode()
+				+ " clients=" + clientCount
+				+ " messages=" + MESSAGES
+				+ " elapsedMs=" + elapsedMs
+				+ " allocatedBytesPerDelivery=" + String.format("%.1f", (double) allocated / ((long) MESSAGES * clientCount)));
+
+		for(Socket socket : sockets) {
+			socket.close();
+		}
+	}
+
+	private static void broadcast(ServerData room, String message, int count, int clientCount, int lineLength,
+								  AtomicLong bytesReceived) throws InterruptedException {
+		long expected = bytesReceived.get() + (long) count * clientCount * lineLength;
+		for(int i = 0; i < count; i++) {
+			room.sendMessage(message);
+		}
+
+		while(bytesReceived.get() < expected) {
+			Thread.sleep(1);
+		}
+	}
+
+	private static void drain(Socket socket, AtomicLong bytesReceived) {
+		byte[] buffer = new byte[16384];
+		try {
+			InputStream input = socket.getInputStream();
+			int read;
+			while((read = input.read(buffer)) != -1) {
+				bytesReceived.addAndGet(read);
+			}
+		}
+		catch (IOException ignored) {
+			// The benchmark closed the socket
+		}
+	}
+
+	private static long sum(long[] values) {
+		long total = 0;
+		for(long value : values) {
+			total += Math.max(value, 0);
+		}
+
+		return total;
+	}
+}
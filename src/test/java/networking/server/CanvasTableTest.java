@@ -0,0 +1,91 @@
+package networking.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CanvasTableTest {
+
+    @Test
+    void acquireAndRelease() {
+        CanvasTable table = new CanvasTable(64);
+
+        assertTrue(table.acquire(1, 5));
+        assertFalse(table.acquire(2, 5));
+        assertTrue(table.isOwnedBy(1, 5));
+        assertFalse(table.isOwnedBy(2, 5));
+
+        // A client must release its canvas before acquiring another
+        assertFalse(table.acquire(1, 6));
+        assertTrue(table.isOwnedBy(1, 5));
+        table.release(1);
+        assertTrue(table.acquire(1, 6));
+        assertTrue(table.acquire(2, 5));
+
+        table.release(1);
+        table.release(2);
+        assertFalse(table.isOwnedBy(1, 6));
+        assertTrue(table.acquire(2, 6));
+
+        assertThrows(IllegalArgumentException.class, () -> table.acquire(1, 64));
+        assertThrows(IllegalArgumentException.class, () -> table.acquire(1, -1));
+    }
+
+    @Test
+    void lockedCanvasesCannotBeAcquired() {
+        CanvasTable table = new CanvasTable(70);
+
+        for(int i = 0; i < 70; i++) {
+            assertFalse(table.allLocked());
+            table.lock(i);
+            table.lock(i); // Locking twice must not be counted twice
+            assertTrue(table.isLocked(i));
+            assertFalse(table.acquire(1, i));
+        }
+
+        assertTrue(table.allLocked());
+        table.clear();
+        assertFalse(table.allLocked());
+        assertTrue(table.acquire(1, 69));
+    }
+
+    @Test
+    void concurrentAcquireHasOneWinner() throws InterruptedException {
+        int THREAD_COUNT = 8;
+        int REPEAT_COUNT = 2000;
+
+        for(int i = 0; i < REPEAT_COUNT; i++) {
+            CanvasTable table = new CanvasTable(64);
+            AtomicInteger winners = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[THREAD_COUNT];
+
+            for(int t = 0; t < THREAD_COUNT; t++) {
+                int clientID = t + 1;
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+
+                    if(table.acquire(clientID, 3)) {
+                        winners.incrementAndGet();
+                    }
+                });
+                threads[t].start();
+            }
+
+            start.countDown();
+            for(Thread thread : threads) {
+                thread.join();
+            }
+
+            assertEquals(1, winners.get());
+        }
+    }
+}
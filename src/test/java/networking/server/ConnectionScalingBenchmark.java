@@ -0,0 +1,79 @@
+package networking.server;
+
+import networking.ColorPalette;
+import networking.NetworkMessage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares how the server modes scale with the number of connected clients.
+ * <p>
+ * This is not a unit test. Each mode is measured in its own JVM so the thread counts don't mix:
+ *      java ... networking.server.ConnectionScalingBenchmark blocking 2000
+ *      java ... networking.server.ConnectionScalingBenchmark virtual 2000
+ *      java ... networking.server.ConnectionScalingBenchmark nio 2000
+ * <p>
+ * Every client connects and registers a colour. The benchmark then reports the time taken and the number of
+ * platform (OS) threads alive in the JVM while all the clients are connected.
+ */
+public class ConnectionScalingBenchmark {
+
+	private static final int PORT = 7171;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		ServerConfig config = new ServerConfig(PORT);
+		config.setMode(ServerConfig.Mode.valueOf(args[0].toUpperCase()));
+		int clientCount = Integer.parseInt(args[1]);
+
+		int threadsBefore = Thread.getAllStackTraces().size();
+
+		NetworkServer server = new NetworkServer(config);
+		server.setName("Server");
+		server.setDaemon(true);
+		server.start();
+		Thread.sleep(500); // Give the server time to bind
+
+		List<Socket> sockets = new ArrayList<>();
+		long start = System.nanoTime();
+
+		for(int i = 0; i < clientCount; i++) {
+			Socket socket = new Socket("localhost", PORT);
+			sockets.add(socket);
+
+			PrintWriter output = new PrintWriter(socket.getOutputStream(), true);
+			BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			output.println(NetworkMessage.addColorRequestHeader(Integer.toString(i)));
+
+			// The board and the palette of the room arrive before the response
+			String line;
+			do {
+				line = input.readLine();
+			} while(!line.startsWith(NetworkMessage.COLOR_REQUEST_HEADER));
+
+			if(line.equals(NetworkMessage.addColorRequestHeader(Integer.toString(ColorPalette.NO_COLOR)))) {
+				throw new IllegalStateException("Colour registration failed for client " + i);
+			}
+		}
+
+		long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+		int threadsDuring = Thread.getAllStackTraces().size();
+		Runtime runtime = Runtime.getRuntime();
+		long usedHeapMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+
+		System.out.println("mode=" + config.getMode()
+				+ " clients=" + clientCount
+				+ " connectAndRegisterMs=" + elapsedMs
+				+ " platformThreads=" + threadsDuring + " (before server start: " + threadsBefore + ")"
+				+ " usedHeapMb=" + usedHeapMb);
+
+		for(Socket socket : sockets) {
+			socket.close();
+		}
+	}
+}
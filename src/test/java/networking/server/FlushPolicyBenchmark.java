@@ -0,0 +1,120 @@
+package networking.server;
+
+import networking.SocketTuning;
+import networking.client.NetworkClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the flush policies by the number of write system calls and the round trip time of requests.
+ * <p>
+ * This is not a unit test. The server and the clients run in this JVM with the same SocketTuning:
+ *      java ... networking.server.FlushPolicyBenchmark [blocking|virtual|nio] [tcp-nodelay]
+ * <p>
+ * Every client sends bursts of requests, the way a player's stroke batches and canvas requests arrive together,
+ * and waits for every response before the next burst. For each policy the benchmark reports the write system calls
+ * made by the whole process (read from /proc/self/io, so only on Linux) per request, and the p50 and p99 round trip
+ * time of a request. A round trip includes one write by the client and one by the server.
+ */
+public class FlushPolicyBenchmark {
+
+	private static final int PORT = 7272;
+	private static final int CLIENT_COUNT = 8;
+	private static final int BURST_COUNT = 500;
+	private static final int BURST_SIZE = 8;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		ServerConfig.Mode mode = args.length > 0 ? ServerConfig.Mode.valueOf(args[0].toUpperCase()) : ServerConfig.Mode.BLOCKING;
+		boolean tcpNoDelay = args.length <= 1 || Boolean.parseBoolean(args[1]);
+
+		SocketTuning.FlushPolicy[] policies = SocketTuning.FlushPolicy.values();
+		for(int i = 0; i < policies.length; i++) {
+			ServerConfig config = new ServerConfig(PORT + i);
+			config.setMode(mode);
+			config.getSocketTuning().setFlushPolicy(policies[i]);
+			config.getSocketTuning().setTcpNoDelay(tcpNoDelay);
+
+			measure(config);
+		}
+	}
+
+	private static void measure(ServerConfig config) throws IOException, InterruptedException {
+		NetworkServer server = new NetworkServer(config);
+		server.setName("Server");
+		server.setDaemon(true);
+		server.start();
+		Thread.sleep(500); // Give the server time to bind
+
+		List<NetworkClient> clients = new ArrayList<>();
+		for(int i = 0; i < CLIENT_COUNT; i++) {
+			NetworkClient client = new NetworkClient("localhost", Integer.toString(config.getPort()), true, config.getSocketTuning());
+			client.joinRoom("flush " + config.getSocketTuning().getFlushPolicy());
+			clients.add(client);
+		}
+
+		long[] roundTrips = new long[CLIENT_COUNT * BURST_COUNT * BURST_SIZE];
+		List<Thread> threads = new ArrayList<>();
+		long writesBefore = getWriteSyscalls();
+
+		for(int i = 0; i < CLIENT_COUNT; i++) {
+			NetworkClient client = clients.get(i);
+			int first = i * BURST_COUNT * BURST_SIZE;
+			threads.add(Thread.ofPlatform().start(() -> sendBursts(client, roundTrips, first)));
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		long writes = getWriteSyscalls() - writesBefore;
+		Arrays.sort(roundTrips);
+
+		System.out.println("mode=" + config.getMode()
+				+ " policy=" + config.getSocketTuning().getFlushPolicy()
+				+ " tcpNoDelay=" + config.getSocketTuning().isTcpNoDelay()
+				+ " requests=" + roundTrips.length
+				+ " writeSyscalls=" + writes
+				+ " writeSyscallsPerRequest=" + (writes < 0 ? "n/a" : String.format("%.2f", (double) writes / roundTrips.length))
+				+ " p50Us=" + roundTrips[roundTrips.length / 2] / 1000
+				+ " p99Us=" + roundTrips[roundTrips.length * 99 / 100] / 1000);
+	}
+
+	private static void sendBursts(NetworkClient client, long[] roundTrips, int first) {
+		int index = first;
+		for(int burst = 0; burst < BURST_COUNT; burst++) {
+			CompletableFuture<?>[] responses = new CompletableFuture<?>[BURST_SIZE];
+			for(int i = 0; i < BURST_SIZE; i++) {
+				long start = System.nanoTime();
+				int slot = index++;
+				// The client is already in a room, so the server only answers false
+				responses[i] = client.joinRoomAsync("another room")
+						.thenRun(() -> roundTrips[slot] = System.nanoTime() - start);
+			}
+
+			CompletableFuture.allOf(responses).join();
+		}
+	}
+
+	/**
+	 * @return The number of write system calls made by this process, or -1 if they can't be counted
+	 */
+	private static long getWriteSyscalls() {
+		try {
+			for(String line : Files.readAllLines(Path.of("/proc/self/io"))) {
+				if(line.startsWith("syscw:")) {
+					return Long.parseLong(line.substring("syscw:".length()).trim());
+				}
+			}
+		}
+		catch (IOException ignored) {
+			// Not Linux
+		}
+
+		return -1;
+	}
+}
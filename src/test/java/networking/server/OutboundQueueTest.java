@@ -0,0 +1,32 @@
+package networking.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    @Test
+    void onlyDrawingsAreDroppedWhileFull() {
+        OutboundQueue<String> queue = new OutboundQueue<>(2, 60_000);
+
+        assertTrue(queue.offer("draw 1", true));
+        assertTrue(queue.offer("draw 2", true));
+        // The queue is full: the drawing is dropped but the clear is still queued behind the others
+        assertTrue(queue.offer("draw 3", true));
+        assertTrue(queue.offer("clear", false));
+
+        assertEquals("draw 1", queue.poll());
+        assertEquals("draw 2", queue.poll());
+        assertEquals("clear", queue.poll());
+        assertNull(queue.poll());
+
+        // A client that has also used up the reserved space is disconnected instead of missing a message
+        queue.offer("draw", true);
+        queue.offer("draw", true);
+        for(int i = 0; i < OutboundQueue.RESERVED_CAPACITY; i++) {
+            assertTrue(queue.offer("response", false));
+        }
+        assertFalse(queue.offer("response", false));
+    }
+}
@@ -0,0 +1,173 @@
+package networking.server;
+
+import javafx.scene.paint.Color;
+import networking.BinaryProtocol;
+import networking.ColorPalette;
+import networking.NetworkMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerDataTest {
+
+    /**
+     * Records the text form of every message sent to it
+     */
+    private static class RecordingConnection implements ClientConnection {
+        private final List<String> received = new ArrayList<>();
+
+        @Override
+        public void send(ServerMessage message) {
+            received.add(new String(message.getTextLine(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void useBinaryProtocol() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "test";
+        }
+    }
+
+    @Test
+    void drawsAreCombinedOncePerTick() {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        ServerData room = new ServerData("tick test");
+        // One tick per second so the test can flush the draws itself
+        room.startTicks(ticker, 1);
+
+        RecordingConnection client1 = new RecordingConnection();
+        RecordingConnection client2 = new RecordingConnection();
+        RecordingConnection client3 = new RecordingConnection();
+        room.addClient(1, client1);
+        room.addClient(2, client2);
+        room.addClient(3, client3);
+
+        room.sendDraw(new ServerMessage("DRAW-a"), 0, 1);
+        room.sendDraw(new ServerMessage("DRAW-b"), 1, 2);
+        room.sendDraw(new ServerMessage("DRAW-c"), 0, 1);
+        assertTrue(client3.received.isEmpty());
+
+        room.flushDraws();
+
+        // Each client gets a single write with every draw it didn't send, grouped by canvas
+        assertEquals(List.of("DRAW-b\n"), client1.received);
+        assertEquals(List.of("DRAW-a\nDRAW-c\n"), client2.received);
+        assertEquals(List.of("DRAW-a\nDRAW-c\nDRAW-b\n"), client3.received);
+
+        // Other messages are never received before the draws sent ahead of them
+        room.sendDraw(new ServerMessage("DRAW-d"), 0, 1);
+        room.sendMessage("CANVAS_CLEAR-0");
+        assertEquals(List.of("DRAW-a\nDRAW-c\nDRAW-b\n", "DRAW-d\n", "CANVAS_CLEAR-0\n"), client3.received);
+        assertEquals(List.of("DRAW-b\n", "CANVAS_CLEAR-0\n"), client1.received);
+
+        ticker.shutdownNow();
+    }
+
+    @Test
+    void releasedCanvasIsClaimedOrCleared() {
+        ServerData room = new ServerData("coverage test");
+        RecordingConnection client1 = new RecordingConnection();
+        RecordingConnection client2 = new RecordingConnection();
+        room.addClient(1, client1);
+        room.addClient(2, client2);
+        assertEquals(0, room.registerColor(1, BinaryProtocol.encodeColor(Color.RED)));
+
+        // A single line is far from half of the canvas
+        assertTrue(room.acquireCanvasForDrawing(1, 5));
+        room.addCoverage(5, 0, 50, true);
+        room.addCoverage(5, 100, 50, false);
+        // Points far outside the canvas only cover the part of the line on it
+        room.addCoverage(5, 1e9, 1e9, false);
+        room.addCoverage(5, -1e9, 60, false);
+        assertThrows(IllegalArgumentException.class, () -> room.addCoverage(5, Double.POSITIVE_INFINITY, 50, false));
+        room.releaseAcquiredCanvas(1);
+        assertEquals(List.of("CANVAS_CLEAR-5\n"), client2.received);
+
+        // Horizontal lines covering the top 60 rows of the canvas
+        assertTrue(room.acquireCanvasForDrawing(1, 5));
+        for(int y = 1; y < 60; y += 2) {
+            room.addCoverage(5, 0, y, true);
+            room.addCoverage(5, 100, y, false);
+        }
+        room.releaseAcquiredCanvas(1);
+        assertEquals("CANVAS_OWN-5/0\n", client2.received.get(1));
+        assertEquals(client2.received, client1.received);
+
+        // A claimed canvas is locked
+        assertFalse(room.acquireCanvasForDrawing(2, 5));
+    }
+
+    @Test
+    void paletteIndicesAreReusedOnceUnused() {
+        ServerData room = new ServerData("palette test");
+        room.addClient(1, new RecordingConnection());
+        room.addClient(2, new RecordingConnection());
+        int red = BinaryProtocol.encodeColor(Color.RED);
+        int blue = BinaryProtocol.encodeColor(Color.BLUE);
+        int green = BinaryProtocol.encodeColor(Color.GREEN);
+
+        assertEquals(0, room.registerColor(1, red));
+        assertEquals(ColorPalette.NO_COLOR, room.registerColor(2, red));
+        assertEquals(1, room.registerColor(2, blue));
+        assertTrue(room.checkRegisteredColorIndex(2, 1));
+        assertFalse(room.checkRegisteredColorIndex(1, 1));
+
+        // A released colour can be registered again and keeps its index
+        room.removeClient(1);
+        assertEquals(0, room.registerColor(2, red));
+        assertFalse(room.checkRegisteredColorIndex(2, 1));
+
+        // A client joining later is sent every colour that has an index
+        RecordingConnection client3 = new RecordingConnection();
+        room.addClient(3, client3);
+        assertEquals(List.of(NetworkMessage.generatePaletteMessage(0, red) + "\n",
+                NetworkMessage.generatePaletteMessage(1, blue) + "\n"), client3.received);
+
+        // Blue was given up, so a new colour takes its index
+        assertEquals(1, room.registerColor(3, green));
+
+        // Red claimed a canvas, so its index is kept once it is given up
+        assertTrue(room.acquireCanvasForDrawing(2, 0));
+        for(int y = 1; y < 60; y += 2) {
+            room.addCoverage(0, 0, y, true);
+            room.addCoverage(0, 100, y, false);
+        }
+        room.releaseAcquiredCanvas(2);
+        room.removeClient(2);
+        assertEquals(2, room.registerColor(3, blue));
+        assertEquals(0, room.registerColor(3, red));
+    }
+
+    @Test
+    void malformedMessagesAreDropped() {
+        RecordingConnection connection = new RecordingConnection();
+        ClientSession session = new ClientSession(connection);
+
+        session.processMessage("no data section");
+        session.processMessage("x" + NetworkMessage.REQUEST_ID_SEPARATOR + NetworkMessage.addRoomJoinHeader("bad request ID"));
+        session.processMessage("NOT_A_HEADER-data");
+        session.processFrame(ByteBuffer.wrap(new byte[] {(byte) 0x7F}));
+        assertTrue(connection.received.isEmpty());
+
+        // The connection keeps working
+        String join = NetworkMessage.addRequestID(3, NetworkMessage.addRoomJoinHeader("malformed test"));
+        session.processMessage(join);
+        assertEquals(NetworkMessage.addRequestID(3, NetworkMessage.addRoomJoinHeader("true")) + "\n",
+                connection.received.get(connection.received.size() - 1));
+        session.disconnected();
+    }
+}